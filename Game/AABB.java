@@ -26,6 +26,26 @@ public class AABB {
 		this.tr = tr;
 	}
 	
+	/**
+	 * Copies the corners of other into this AABB, without allocating.
+	 * @param other The AABB to copy
+	 * @return This AABB, so that calls may be chained together. */
+	public AABB set(AABB other) {
+		bl.x = other.bl.x;
+		bl.y = other.bl.y;
+		tr.x = other.tr.x;
+		tr.y = other.tr.y;
+		
+		return this;
+	}
+	
+	/**
+	 * @return A copy of this AABB, with its own corners. */
+	@Override
+	public AABB clone() {
+		return new AABB(bl.clone(), tr.clone());
+	}
+	
 	/**
 	 * Translates a AABB by trans
 	 * @param trans The amount to translate by
@@ -52,7 +72,7 @@ public class AABB {
 	 * @return Does this AABB contain other? */
 	public boolean contains(AABB other) {
 		return bl.x <= other.bl.x && other.tr.x <= tr.x &&
-			   bl.y <= other.bl.y && other.tr.y < tr.y;
+			   tr.y <= other.tr.y && other.bl.y <= bl.y;
 	}
 	
 	/**
@@ -60,7 +80,7 @@ public class AABB {
 	 * @return Does this AABB contain point ? */
 	public boolean contains(Vec2D point) {
 		return bl.x <= point.x && point.x <= tr.x &&
-			   bl.y <= point.y && point.y < tr.y;
+			   tr.y <= point.y && point.y <= bl.y;
 	}
 	
 	/**
@@ -71,6 +91,29 @@ public class AABB {
 	         (tr.y <= b.bl.y && bl.y >= b.tr.y);
 	}
 	
+	/**
+	 * Checks if two AABBs have the same corners.
+	 * @param other The other object to compare.
+	 * @return true if the AABBs are equal, false otherwise. */
+	@Override
+	public boolean equals(Object other) {
+		if(!(other instanceof AABB)) return false;
+		AABB o = (AABB)other;
+		return bl.equals(o.bl) && tr.equals(o.tr);
+	}
+
+	/**
+	 * Hashes the corners, consistent with {@link #equals(Object)}.
+	 * @return The hash code of this AABB. */
+	@Override
+	public int hashCode() {
+		// Adding 0 turns -0 into 0, as the two compare equal
+		int hash = Float.floatToIntBits(bl.x + 0.0f);
+		hash = hash * 31 + Float.floatToIntBits(bl.y + 0.0f);
+		hash = hash * 31 + Float.floatToIntBits(tr.x + 0.0f);
+		return hash * 31 + Float.floatToIntBits(tr.y + 0.0f);
+	}
+
 	/**
 	 * Rotates the corners of this AABB to create an OBB. This AABB
 	 * will be unmodified.
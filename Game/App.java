@@ -28,6 +28,7 @@ public class App extends JComponent {
 	private PathfindingSystem m_pathfindingSystem;
 	private DeathSystem m_deathSystem;
 	private HealthSystem m_healthSystem;
+	private HierarchySystem m_hierarchySystem;
 	private int m_targetTicks;
 	
 	private int m_prevState;
@@ -61,9 +62,15 @@ public class App extends JComponent {
 	public static final int EnemyMask = 1 << 2;
 	public static final int PlayerMask = 1 << 3;
 	
+	// Contact layers of the masks above, tiles keep the default self mask of 1 and so the first layer
+	private static final int TileLayer = 0;
+	private static final int BulletLayer = PhysicsWorld.getLayer(BulletMask);
+	private static final int EnemyLayer = PhysicsWorld.getLayer(EnemyMask);
+	private static final int PlayerLayer = PhysicsWorld.getLayer(PlayerMask);
+	
 	private EnemySpawner m_spawner;
 	
-	private class BulletComponent extends Component {
+	private class BulletComponent extends Component implements PackedComponent {
 		public int hitsLeft = 5;
 		
 		@Override
@@ -78,8 +85,51 @@ public class App extends JComponent {
 			BulletComponent clone = new BulletComponent();
 			clone.hitsLeft = hitsLeft;
 			return clone;
+		}
+
+		@Override
+		public int stateSize() {
+			return 1;
+		}
+
+		@Override
+		public void saveState(float buf[], int offset) {
+			buf[offset] = hitsLeft;
+		}
+
+		@Override
+		public void loadState(float buf[], int offset) {
+			hitsLeft = (int)buf[offset];
 		}}
 	
+	/**
+	 * Finds whether any body overlaps an area. */
+	private class OccupiedCallback implements PhysicsWorld.BodyCallback {
+		public boolean occupied;
+		
+		@Override
+		public void report(RigidBody body, Object userData) {
+			occupied = true;
+		}
+	}
+	
+	private OccupiedCallback m_occupied = new OccupiedCallback();
+	
+	/**
+	 * Finds whether the body or tile of an entity is under a point. */
+	private class PickCallback implements PhysicsWorld.BodyCallback {
+		public Entity target;
+		public boolean picked;
+		
+		@Override
+		public void report(RigidBody body, Object userData) {
+			if(userData == target)
+				picked = true;
+		}
+	}
+	
+	private PickCallback m_pick = new PickCallback();
+	
 	private class UnRemovableTag extends Component {
 		@Override
 		public Class<?> getType() {
@@ -163,14 +213,37 @@ public class App extends JComponent {
 		
 		m_drawLock = new ReentrantLock();
 		m_world = new EntityWorld();
-		m_physicsWorld = new PhysicsWorld(w, h);
+		// Bullets, enemies and the player each get a grid, so bullets are never paired with each other or the player.
+		// Static bodies never move, so their sweep-and-prune endpoints stay sorted and every query is a binary search
+		m_physicsWorld = new PhysicsWorld(new LayeredBroadPhase(() -> new SpatialHashGrid(Tile.sideLength)), new SweepAndPrune());
+		// Only these layers have gameplay effects, every other contact is skipped without looking at its entities
+		m_physicsWorld.setContactHandler(BulletLayer, EnemyLayer, new ContactHandler() {
+			@Override
+			public void handle(ContactStream contacts, int index, boolean flipped) {
+				if(contacts.getType(index) == CollisionEvent.BEGIN)
+					onBulletHit(contacts.getEvent(index), flipped);
+			}
+		});
+		ContactHandler enemyTouch = new ContactHandler() {
+			@Override
+			public void handle(ContactStream contacts, int index, boolean flipped) {
+				if(contacts.getType(index) != CollisionEvent.END)
+					onEnemyTouch(contacts, index, flipped);
+			}
+		};
+		m_physicsWorld.setContactHandler(EnemyLayer, PlayerLayer, enemyTouch);
+		m_physicsWorld.setContactHandler(EnemyLayer, TileLayer, enemyTouch);
+		// One vertical strip of the arena per core, no narrower than a few tiles so most pairs stay off the seams
+		m_physicsWorld.setRegionSize(Math.max((float)w / Runtime.getRuntime().availableProcessors(), Tile.sideLength * 8), 0);
 		/* ALL SYSTEMS SHALL BE ADDED HERE: -|*/
 		m_physicsSystem = new PhysicsSystem(m_world, m_physicsWorld);
+		m_physicsSystem.setSpatialSort(targetTicks, Tile.sideLength);
 		m_circleRenderSystem = new CircleShapeSystem(m_world);
 		m_tilemapRenderSystem = new TilemapRenderSystem(m_world);
 		m_playerSystem = new PlayerSystem(m_world);
 		m_deathSystem = new DeathSystem(m_world);
 		m_healthSystem = new HealthSystem(m_world);
+		m_hierarchySystem = new HierarchySystem(m_world);
 		
 		/* GUI */
 		m_window = new JFrame();
@@ -217,9 +290,15 @@ public class App extends JComponent {
 
 			@Override
 			public void mouseClicked(MouseEvent e) {
-				 IVec2D coords = Tilemap.getNearestTile(m_tilemap.get(TransformComponent.class).getLocalPoint(m_mousePos));
-				 System.out.println(coords);
-				 if(coords.equals(m_coreCoords)) {
+				 m_drawLock.lock();
+				 m_pick.target = m_core;
+				 m_pick.picked = false;
+				 m_physicsWorld.pointQuery(m_mousePos, ~0, m_pick);
+				 boolean pickedCore = m_pick.picked;
+				 m_pick.target = null;
+				 m_drawLock.unlock();
+				 
+				 if(pickedCore) {
 					 m_core.get(CoreComponent.class).updatePanel(m_stateGUI[CoreShopState], 4, m_hotbar, m_score);
 					 changeState(CoreShopState);
 				 }
@@ -540,6 +619,45 @@ public class App extends JComponent {
 		m_window.repaint();
 	}
 	
+	/**
+	 * Applies a bullet hitting an enemy, which only counts when the contact begins.
+	 * @param event the contact
+	 * @param flipped whether the enemy is bodyA and the bullet bodyB */
+	private void onBulletHit(CollisionEvent event, boolean flipped) {
+		Entity bullet = (Entity)(flipped ? event.getUserDataB() : event.getUserDataA());
+		Entity enemy = (Entity)(flipped ? event.getUserDataA() : event.getUserDataB());
+		if((bullet == null || !bullet.isAlive()) || (enemy == null || !enemy.isAlive()))
+			return;
+		
+		BulletComponent bulletComp = bullet.get(BulletComponent.class);
+		bulletComp.hitsLeft--;
+		if(bulletComp.hitsLeft < 0)
+			m_world.destroy(bullet.id());
+		
+		m_world.destroy(enemy.id());
+		m_score.addAndGet(1);
+	}
+	
+	/**
+	 * Applies an enemy touching the player or a tile, which damages it every tick they touch.
+	 * @param contacts the contacts of the tick
+	 * @param index the index of the contact
+	 * @param flipped whether the enemy is bodyB */
+	private void onEnemyTouch(ContactStream contacts, int index, boolean flipped) {
+		Entity enemy = (Entity)(flipped ? contacts.getUserDataB(index) : contacts.getUserDataA(index));
+		Entity other = (Entity)(flipped ? contacts.getUserDataA(index) : contacts.getUserDataB(index));
+		if((enemy == null || !enemy.isAlive()) || (other == null || !other.isAlive()))
+			return;
+		
+		if(other.has(MainHealthTag.class))
+			m_health.getAndAdd(-1);
+		
+		if(other.has(HealthComponent.class)) {
+			HealthComponent health = other.get(HealthComponent.class);
+			health.health--;
+		}
+	}
+	
 	private boolean trySpawnBullet(Weapon weapon, float deltaTime) {		
 		if(!weapon.isReadyToFire(deltaTime))
 			return false;
@@ -561,6 +679,7 @@ public class App extends JComponent {
 		rb.applyLinearVelocity(new Vec2D(weapon.getMuzzleVelocity(), 0.0f).rotate(dir.angle()));
 		rb.setSelfMask(BulletMask);
 		rb.setCollMask(~BulletMask);
+		rb.setBullet(true);
 		rb.setUserData(e);
 		e.add(new RigidBodyComponent(rb));
 		
@@ -577,6 +696,17 @@ public class App extends JComponent {
 		TransformComponent transform = m_tilemap.get(TransformComponent.class);
 		IVec2D pos = Tilemap.getNearestTile(m_tilemap.get(TransformComponent.class).getLocalPoint(m_mousePos.clone()));
 		
+		// Do not build over the player or enemies, they would end up stuck inside
+		if(place.isCollidable()) {
+			Vec2D center = transform.getWorldPoint(Tilemap.getLocalTileCenter(pos, place.getDim()));
+			float hw = Tile.sideLength * place.getDim().x * 0.5f, hh = Tile.sideLength * place.getDim().y * 0.5f;
+			AABB area = new AABB(new Vec2D(center.x - hw, center.y + hh), new Vec2D(center.x + hw, center.y - hh));
+			m_occupied.occupied = false;
+			m_physicsWorld.queryAABB(area, PlayerMask | EnemyMask, m_occupied);
+			if(m_occupied.occupied)
+				return false;
+		}
+		
 		if(tilemap.canPlace(pos, place.getDim()) || 
 		   tilemap.contains(pos) && tilemap.find(pos).entity != null && !tilemap.find(pos).entity.has(UnRemovableTag.class)) {
 			tilemap.eraseAll(pos, place.getDim());
@@ -616,57 +746,6 @@ public class App extends JComponent {
 			}
 		}
 		
-		m_world.beginDefer();
-		for(CollisionEvent event : m_physicsWorld.getCollisionEvents()) {
-			Entity eA = (Entity)event.bodyA.getUserData();
-			Entity eB = (Entity)event.bodyB.getUserData();
-			if((eA == null || !eA.isAlive()) || (eB == null || !eB.isAlive()))
-				continue;
-			
-			if(eA.has(BulletComponent.class) && eB.has(EnemyTag.class) || 
-			   eB.has(BulletComponent.class) && eA.has(EnemyTag.class)) {
-				if(eA.has(BulletComponent.class)) {
-					BulletComponent bullet = eA.get(BulletComponent.class);
-					bullet.hitsLeft--;
-					if(bullet.hitsLeft < 0)
-						m_world.destroy(eA.id());
-				} else if(eA.has(EnemyTag.class)) {
-					m_world.destroy(eA.id());
-					m_score.addAndGet(1);
-				}
-				
-				if(eB.has(BulletComponent.class)) {
-					BulletComponent bullet = eB.get(BulletComponent.class);
-					bullet.hitsLeft--;
-					if(bullet.hitsLeft < 0)
-						m_world.destroy(eB.id());
-				} else if(eB.has(EnemyTag.class)) {
-					m_world.destroy(eB.id());
-					m_score.addAndGet(1);
-				}
-			}
-			
-			if(eA.has(MainHealthTag.class) && eB.has(EnemyTag.class) || 
-			   eB.has(MainHealthTag.class) && eA.has(EnemyTag.class)) {
-				m_health.getAndAdd(-1);
-			}
-			
-			if(eA.has(HealthComponent.class) && eB.has(EnemyTag.class) || 
-			   eB.has(HealthComponent.class) && eA.has(EnemyTag.class)) {
-				if(eA.has(HealthComponent.class)) {
-					HealthComponent health = eA.get(HealthComponent.class);
-					health.health--;
-					
-				}
-				
-				if(eB.has(HealthComponent.class)) {
-					HealthComponent health = eB.get(HealthComponent.class);
-					health.health--;
-				}
-			}
-		}
-		m_world.endDefer();
-		
 		m_scoreLabel.setText("Score " + m_score);
 		m_healthLabel.setText("Health " + m_health);
 		m_lastScoreLabel.setText("Final Score " + m_score);
@@ -683,6 +762,7 @@ public class App extends JComponent {
 			m_pathfindingSystem.run(tick, deltaTime);
 			m_deathSystem.run(tick, deltaTime);
 			m_healthSystem.run(tick, deltaTime);
+			m_hierarchySystem.run(tick, deltaTime);
 			playTick(tick, deltaTime);
 			break;
 		}
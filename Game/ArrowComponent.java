@@ -4,7 +4,7 @@ package Game;
  * Represents an arrow component used in pathfinding or direction-based logic.
  * Stores directional data, movement cost, terrain cost, and generation tracking.
  */
-public class ArrowComponent extends Component {
+public class ArrowComponent extends Component implements PackedComponent {
 	public Vec2D dir = new Vec2D(0);
 	public float cost = Float.MAX_VALUE;
 	public float terrainCost = 0;
@@ -36,4 +36,45 @@ public class ArrowComponent extends Component {
 
 		return clone;
 	}
+
+	/**
+	 * Returns the number of floats written by saveState.
+	 *
+	 * @return The size of the packed state.
+	 */
+	@Override
+	public int stateSize() {
+		return 5;
+	}
+
+	/**
+	 * Writes the direction, costs and generation into buf.
+	 *
+	 * @param buf The buffer to write into.
+	 * @param offset The index to start writing at.
+	 */
+	@Override
+	public void saveState(float buf[], int offset) {
+		buf[offset] = dir.x;
+		buf[offset + 1] = dir.y;
+		buf[offset + 2] = cost;
+		buf[offset + 3] = terrainCost;
+		// Stored by its bits, as the generation keeps growing past what a float holds exactly
+		buf[offset + 4] = Float.intBitsToFloat(gen);
+	}
+
+	/**
+	 * Reads the direction, costs and generation from buf.
+	 *
+	 * @param buf The buffer to read from.
+	 * @param offset The index to start reading at.
+	 */
+	@Override
+	public void loadState(float buf[], int offset) {
+		dir.x = buf[offset];
+		dir.y = buf[offset + 1];
+		cost = buf[offset + 2];
+		terrainCost = buf[offset + 3];
+		gen = Float.floatToRawIntBits(buf[offset + 4]);
+	}
 }
\ No newline at end of file
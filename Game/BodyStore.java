@@ -0,0 +1,164 @@
+package Game;
+
+import java.util.Arrays;
+
+/**
+ * Dense storage for the kinematic state of rigid bodies. Every body owns one row, and each
+ * quantity is kept in its own float column, so a step can integrate all bodies in a single
+ * loop over contiguous arrays instead of visiting each body object.
+ * Rows are kept packed: removing a row moves the last row into its place.
+ */
+class BodyStore {
+    float posX[], posY[];
+    float lastX[], lastY[];
+    float rot[], angularVel[];
+    float linearDampening[];
+    // 1 for rows integrated by the next call to integrate(), 0 for rows that are left in place
+    float active[];
+    // The body owning each row
+    RigidBody bodies[];
+    int count = 0;
+
+    /**
+     * Constructs an empty store with room for capacity rows before growing.
+     *
+     * @param capacity The initial number of rows.
+     */
+    BodyStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        posX = new float[capacity];
+        posY = new float[capacity];
+        lastX = new float[capacity];
+        lastY = new float[capacity];
+        rot = new float[capacity];
+        angularVel = new float[capacity];
+        linearDampening = new float[capacity];
+        active = new float[capacity];
+        bodies = new RigidBody[capacity];
+    }
+
+    /**
+     * Adds a row owned by body, growing the columns if they are full. The row is zeroed.
+     *
+     * @param body The body owning the new row.
+     * @return The index of the new row.
+     */
+    int allocate(RigidBody body) {
+        if (count == bodies.length) {
+            int capacity = count * 2;
+            posX = Arrays.copyOf(posX, capacity);
+            posY = Arrays.copyOf(posY, capacity);
+            lastX = Arrays.copyOf(lastX, capacity);
+            lastY = Arrays.copyOf(lastY, capacity);
+            rot = Arrays.copyOf(rot, capacity);
+            angularVel = Arrays.copyOf(angularVel, capacity);
+            linearDampening = Arrays.copyOf(linearDampening, capacity);
+            active = Arrays.copyOf(active, capacity);
+            bodies = Arrays.copyOf(bodies, capacity);
+        }
+
+        int row = count++;
+        posX[row] = posY[row] = 0;
+        lastX[row] = lastY[row] = 0;
+        rot[row] = angularVel[row] = 0;
+        linearDampening[row] = 0;
+        active[row] = 0;
+        bodies[row] = body;
+        return row;
+    }
+
+    /**
+     * Removes a row, moving the last row into its place and telling its body about the move.
+     *
+     * @param row The index of the row to remove.
+     */
+    void release(int row) {
+        int last = --count;
+        if (row != last) {
+            copyRow(row, this, last);
+            bodies[row] = bodies[last];
+            bodies[row].row = row;
+        }
+        bodies[last] = null;
+    }
+
+    /**
+     * Copies the state of a row of another store, or of this one, into a row of this store.
+     *
+     * @param dst The row to write into.
+     * @param src The store to read from.
+     * @param srcRow The row to read from.
+     */
+    void copyRow(int dst, BodyStore src, int srcRow) {
+        posX[dst] = src.posX[srcRow];
+        posY[dst] = src.posY[srcRow];
+        lastX[dst] = src.lastX[srcRow];
+        lastY[dst] = src.lastY[srcRow];
+        rot[dst] = src.rot[srcRow];
+        angularVel[dst] = src.angularVel[srcRow];
+        linearDampening[dst] = src.linearDampening[srcRow];
+        active[dst] = src.active[srcRow];
+    }
+
+    /**
+     * Clears the active flag of every row, see {@link #integrate(float)}.
+     */
+    void clearActive() {
+        Arrays.fill(active, 0, count, 0);
+    }
+
+    /**
+     * Integrates every row flagged as active with Verlet integration, and leaves the other rows untouched.
+     * The flag is applied as a factor instead of a branch, so the loop body is the same for every row
+     * and the JIT is free to vectorize it. The last position is blended rather than offset, so active
+     * rows end up with exactly their previous position, as when integrating a single body.
+     *
+     * @param deltaTime The time step to integrate over.
+     */
+    void integrate(float deltaTime) {
+        float posX[] = this.posX, posY[] = this.posY;
+        float lastX[] = this.lastX, lastY[] = this.lastY;
+        float rot[] = this.rot, angularVel[] = this.angularVel;
+        float active[] = this.active;
+
+        for (int i = 0; i < count; i++) {
+            float k = active[i];
+            float j = 1 - k;
+            float vx = posX[i] - lastX[i];
+            float vy = posY[i] - lastY[i];
+
+            lastX[i] = posX[i] * k + lastX[i] * j;
+            lastY[i] = posY[i] * k + lastY[i] * j;
+            posX[i] += vx * k;
+            posY[i] += vy * k;
+            rot[i] += angularVel[i] * deltaTime * k;
+        }
+    }
+
+    /**
+     * Reorders the rows to follow the given order of bodies, which must all own a row of this store,
+     * so that iterating the rows visits the bodies in that order.
+     *
+     * @param order The bodies, in their new row order.
+     * @param n The number of bodies in order, equal to the row count.
+     */
+    void reorder(RigidBody order[], int n) {
+        BodyStore sorted = new BodyStore(bodies.length);
+        for (int i = 0; i < n; i++) {
+            RigidBody body = order[i];
+            sorted.copyRow(sorted.allocate(body), this, body.row);
+        }
+
+        posX = sorted.posX;
+        posY = sorted.posY;
+        lastX = sorted.lastX;
+        lastY = sorted.lastY;
+        rot = sorted.rot;
+        angularVel = sorted.angularVel;
+        linearDampening = sorted.linearDampening;
+        active = sorted.active;
+        bodies = sorted.bodies;
+        for (int i = 0; i < n; i++)
+            bodies[i].row = i;
+    }
+}
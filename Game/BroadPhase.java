@@ -0,0 +1,83 @@
+package Game;
+
+import java.awt.Graphics2D;
+
+/**
+ * A broadphase stores the AABBs of tree elements and quickly finds the elements whose
+ * AABBs overlap, so the narrowphase only has to test pairs that may actually collide.
+ */
+public interface BroadPhase {
+
+	/**
+	 * Receives the elements found by {@link BroadPhase#query(AABB, QueryCallback)}.
+	 */
+	interface QueryCallback {
+		/**
+		 * Called once for every element overlapping the queried AABB.
+		 * 
+		 * @param e The overlapping element.
+		 */
+		void report(TreeElement e);
+	}
+
+	/**
+	 * Receives the pairs found by {@link BroadPhase#pairs(PairCallback)}.
+	 */
+	interface PairCallback {
+		/**
+		 * Called once for every pair of overlapping elements.
+		 * 
+		 * @param a The first element of the pair.
+		 * @param b The second element of the pair.
+		 */
+		void pair(TreeElement a, TreeElement b);
+	}
+
+	/**
+	 * Inserts an element using its current AABB.
+	 * 
+	 * @param e The element to insert.
+	 */
+	void insert(TreeElement e);
+
+	/**
+	 * Moves an element to match its current AABB, inserting it if it is not yet stored.
+	 * 
+	 * @param e The element to update.
+	 */
+	void update(TreeElement e);
+
+	/**
+	 * Removes an element. Elements that are not stored are ignored.
+	 * 
+	 * @param e The element to remove.
+	 */
+	void remove(TreeElement e);
+
+	/**
+	 * Reports every element whose AABB overlaps bounds, each exactly once.
+	 * 
+	 * @param bounds The AABB to query.
+	 * @param callback The callback to report elements to.
+	 */
+	void query(AABB bounds, QueryCallback callback);
+
+	/**
+	 * Reports every pair of elements whose AABBs overlap, each exactly once.
+	 * 
+	 * @param callback The callback to report pairs to.
+	 */
+	void pairs(PairCallback callback);
+
+	/**
+	 * Removes all elements.
+	 */
+	void clear();
+
+	/**
+	 * Debug draws the broadphase structure.
+	 * 
+	 * @param gfx The graphics to draw on.
+	 */
+	void draw(Graphics2D gfx);
+}
@@ -30,16 +30,22 @@ public class Circle extends Fixture {
 	}
 
 	/**
-	 * Computes and returns the axis-aligned bounding box (AABB) of the circle,
+	 * Computes the axis-aligned bounding box (AABB) of the circle into out,
 	 * ignoring rotation since a circle is rotationally symmetric.
 	 *
 	 * @param rotation the rotation of the object (ignored for circles)
-	 * @return the AABB of the circle
+	 * @param x the x coordinate of the circle's center
+	 * @param y the y coordinate of the circle's center
+	 * @param out the AABB to write into
+	 * @return out
 	 */
 	@Override
-	public AABB getAABB(float rotation) {
-		float sl = m_radius * 2;
-		return new AABB(-sl + m_radius, -sl + m_radius, sl, sl);
+	public AABB getAABB(float rotation, float x, float y, AABB out) {
+		out.bl.x = x - m_radius;
+		out.bl.y = y + m_radius;
+		out.tr.x = x + m_radius;
+		out.tr.y = y - m_radius;
+		return out;
 	}
 
 	/**
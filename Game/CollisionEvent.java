@@ -2,12 +2,56 @@ package Game;
 
 /**
  * Represents a collision event between two rigid bodies.
+ * A contact keeps the same event from the step it begins until the step it ends.
  */
 public class CollisionEvent {
+	/** The bodies started touching this step */
+	public static final int BEGIN = 0;
+	/** The bodies were already touching and still are */
+	public static final int STAY = 1;
+	/** The bodies were touching last step and no longer are */
+	public static final int END = 2;
 
 	/** The first rigid body involved in the collision */
 	public RigidBody bodyA;
 
-	/** The second rigid body involved in the collision */
+	/** The second rigid body involved in the collision, the grid's tile body for contacts with a tile */
 	public RigidBody bodyB;
-}
\ No newline at end of file
+
+	/** Whether the contact began, stayed or ended this step */
+	public int type;
+
+	// Body id pair of the contact, lower id in the high 32 bits, or the tile key for contacts with a tile
+	long key;
+
+	// User data of the touched tile, for contacts with a tile
+	Object tileData;
+
+	/**
+	 * Returns the user data of the first body.
+	 * 
+	 * @return The user data of bodyA.
+	 */
+	public Object getUserDataA() {
+		return bodyA.getUserData();
+	}
+
+	/**
+	 * Returns the user data of the second side of the contact, which is the touched tile's for
+	 * contacts with a tile, as the grid's tile body is shared by all of its tiles.
+	 * 
+	 * @return The user data of bodyB, or of the tile.
+	 */
+	public Object getUserDataB() {
+		return tileData != null ? tileData : bodyB.getUserData();
+	}
+
+	/**
+	 * Returns whether this is a contact with a tile of a {@link TileGrid} rather than with a body.
+	 * 
+	 * @return true for contacts with a tile, false otherwise.
+	 */
+	public boolean isTileContact() {
+		return key < 0;
+	}
+}
@@ -1,130 +1,85 @@
 package Game;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * Handles collision detection and resolution between rigid bodies.
  * Supports different fixture types (circle, rectangle) and uses
  * Separating Axis Theorem (SAT) for collision detection.
+ * Shapes are tested on primitive floats in per-thread scratch buffers, so testing
+ * a pair does not allocate and several threads may share one solver.
  */
 public class CollisionSolver {
 	public static class CollisionManifold {
 		float depth;
-		Vec2D normal;
+		Vec2D normal = new Vec2D();
 		Vec2D points[];
 	}
 	
-	class MinMax {
-		float min;
-		float max;
-	};
-	
 	/**
-	 * Projects the points onto the given normal and returns the minimum and maximum values.
-	 *
-	 * @param normal The normal vector to project the points onto.
-	 * @param points The points to be projected onto the normal.
-	 * @return A MinMax object containing the minimum and maximum projection values.
+	 * Corner points and axes of the shapes being tested, reused by every test on the same thread.
 	 */
-	public MinMax project(Vec2D normal, Vec2D[] points) {
-		MinMax minMax = new MinMax();
-		minMax.min = minMax.max = normal.dot(points[0]);
-		
-		for(int i = 1; i < points.length; i++) {
-			float val = normal.dot(points[i]);
-			
-			if(val < minMax.min) {
-				minMax.min = val;
-			}
-			if(val > minMax.max) {
-				minMax.max = val;
-			}
-		}
-		
-		return minMax; 
+	private static class Scratch {
+		float ax[] = new float[4], ay[] = new float[4];
+		float bx[] = new float[4], by[] = new float[4];
+		float nx[] = new float[4], ny[] = new float[4];
 	}
 	
+	private static final ThreadLocal<Scratch> s_scratch = ThreadLocal.withInitial(Scratch::new);
+	
 	/**
-	 * Checks for a collision using the Separating Axis Theorem (SAT).
+	 * Checks for a collision using the Separating Axis Theorem (SAT). Each axis is tested by
+	 * projecting the points of both shapes onto it, the axis with the smallest overlap becomes
+	 * the manifold's normal, pointing from B towards A.
 	 * 
 	 * @param manifold The collision manifold to store the results of the collision.
-	 * @param normals The array of normals to test.
-	 * @param aPoints The points of body A.
-	 * @param bPoints The points of body B.
+	 * @param nx The x components of the axes to test.
+	 * @param ny The y components of the axes to test.
+	 * @param axisCount The number of axes to test.
+	 * @param ax The x coordinates of the points of body A.
+	 * @param ay The y coordinates of the points of body A.
+	 * @param aCount The number of points of body A.
+	 * @param bx The x coordinates of the points of body B.
+	 * @param by The y coordinates of the points of body B.
+	 * @param bCount The number of points of body B.
 	 * @return True if there is a collision, false otherwise.
 	 */
-	public boolean separatingAxisTheoremTest(CollisionManifold manifold, Vec2D normals[], Vec2D aPoints[], Vec2D bPoints[]) {
+	public boolean separatingAxisTheoremTest(CollisionManifold manifold, 
+			float nx[], float ny[], int axisCount,
+			float ax[], float ay[], int aCount,
+			float bx[], float by[], int bCount) {
 		manifold.depth = Float.MAX_VALUE;
-		for(int i = 0; i < normals.length; i++) {
-			Vec2D normal = normals[i];
+		for(int i = 0; i < axisCount; i++) {
+			float x = nx[i], y = ny[i];
 			
-			MinMax minMax1 = project(normal, aPoints);
-			MinMax minMax2 = project(normal, bPoints);
+			float minA = x * ax[0] + y * ay[0], maxA = minA;
+			for(int j = 1; j < aCount; j++) {
+				float val = x * ax[j] + y * ay[j];
+				minA = Math.min(minA, val);
+				maxA = Math.max(maxA, val);
+			}
 			
-			if(minMax1.max >= minMax2.min && minMax2.max >= minMax1.min) {
-				float maxSet = Math.min(minMax1.max, minMax2.max);
-				float minSet = Math.max(minMax1.min, minMax2.min);
-				float o = Math.max(0, maxSet - minSet);
-				
-				if(o <= manifold.depth) {
-					manifold.depth = o;
-					manifold.normal = normal;
-				
-					float dir = minMax1.max - minMax2.max;
-					if(dir < 0) {
-						manifold.normal.scale(-1);
-					}
-				}
-				
-			} else
+			float minB = x * bx[0] + y * by[0], maxB = minB;
+			for(int j = 1; j < bCount; j++) {
+				float val = x * bx[j] + y * by[j];
+				minB = Math.min(minB, val);
+				maxB = Math.max(maxB, val);
+			}
+			
+			if(!(maxA >= minB && maxB >= minA))
 				return false;
+			
+			float o = Math.max(0, Math.min(maxA, maxB) - Math.max(minA, minB));
+			if(o <= manifold.depth) {
+				manifold.depth = o;
+				
+				float dir = maxA - maxB < 0 ? -1 : 1;
+				manifold.normal.x = x * dir;
+				manifold.normal.y = y * dir;
+			}
 		}
 		
 		return true;
 	}
 	
-	
-	class PointDistance {
-		Vec2D vertex;
-		Vec2D point;
-		float dist;
-		
-		PointDistance(Vec2D vertex, Vec2D point, float dist) {
-			this.vertex = vertex;
-			this.point = point;
-			this.dist = dist;
-		}
-	}
-	
-	/**
-	 * Calculates the closest point on a line segment defined by two points (a and b) to a vertex.
-	 * 
-	 * @param vertex The vertex to project onto the segment.
-	 * @param a The first point of the segment.
-	 * @param b The second point of the segment.
-	 * @return A PointDistance object containing the closest point and distance.
-	 */
-	PointDistance pointSegmentDistance(Vec2D vertex, Vec2D a, Vec2D b) {
-		Vec2D v_to_a = vertex.clone().sub(a);
-		Vec2D a_to_b = b.clone().sub(a);
-		float p = v_to_a.dot(a_to_b);
-		float l2 = a_to_b.length2();
-		float d = p / l2;
-		
-		Vec2D cp = null;
-		
-		if(d <= 0)
-			cp = a.clone();
-		else if(d >= 1)
-			cp = b.clone();
-		else
-			cp = a.clone().add(a_to_b.scale(d));
-		
-		float dist = vertex.clone().sub(cp).length();
-		return new PointDistance(vertex, cp, dist);
-	}
-	
 	/**
 	 * Checks if two floating-point values are nearly equal within a specified maximum difference.
 	 * 
@@ -151,6 +106,7 @@ public class CollisionSolver {
 	
 	/**
 	 * Detects a collision between two rigid bodies based on their fixtures.
+	 * The squared distance is compared first, so bodies that are apart never take a square root.
 	 * 
 	 * @param manifold The collision manifold to store the collision result.
 	 * @param A The first rigid body.
@@ -160,28 +116,32 @@ public class CollisionSolver {
 	public boolean doesCollisionExist(CollisionManifold manifold, 
 			RigidBody A, Circle fA, 
 			RigidBody B, Circle fB) {
-		Vec2D aPos = A.getPos();
-		Vec2D bPos = B.getPos();
-		float dist = aPos.clone().sub(bPos).length();
+		float dx = A.getX() - B.getX();
+		float dy = A.getY() - B.getY();
+		float dist2 = dx * dx + dy * dy;
 		float radii = (fA.getRadius() + fB.getRadius());
 		
-		if(dist <= radii) {
-			manifold.depth = radii - dist;
-			manifold.normal = aPos.clone().sub(bPos).normal();
-			if(aPos.x == bPos.x && 
-			   aPos.y == bPos.y) {
-				manifold.normal = new Vec2D(1.0f, 0.0f);
-				manifold.depth = radii;
-			}
-			
+		if(dist2 > radii * radii)
+			return false;
+		
+		if(dist2 == 0) {
+			manifold.normal.x = 1.0f;
+			manifold.normal.y = 0.0f;
+			manifold.depth = radii;
 			return true;
 		}
 		
-		return false;
+		float dist = (float)Math.sqrt(dist2);
+		manifold.depth = radii - dist;
+		manifold.normal.x = dx / dist;
+		manifold.normal.y = dy / dist;
+		return true;
 	}
 	
 	/**
 	 * Detects a collision between two rigid bodies based on their fixtures.
+	 * The circle is tested along the axis between the centers, where it projects
+	 * to its center plus and minus its radius.
 	 * 
 	 * @param manifold The collision manifold to store the collision result.
 	 * @param A The first rigid body.
@@ -191,26 +151,30 @@ public class CollisionSolver {
 	public boolean doesCollisionExist(CollisionManifold manifold, 
 			RigidBody A, Rectangle fA, 
 			RigidBody B, Circle fB) {
-		Vec2D aPos = A.getPos();
-		Vec2D bPos = B.getPos();
+		Scratch s = s_scratch.get();
+		float bX = B.getX(), bY = B.getY();
 		float bR = fB.getRadius();
-			
-		Vec2D normals[] = new Vec2D[1];
-		normals[0] = bPos.clone().sub(aPos).normal();
-
-		Vec2D aPoints[] = fA.getPoints(A.getPos(), A.getRot());
-		Vec2D bPoints[] = {
-			new Vec2D(-bR, bR),
-			new Vec2D( bR, bR)
-		};
 		
-		for(int i = 0; i < 2; i++)
-			bPoints[i].rotate(normals[0].angle()).add(bPos);
-
-		if(!separatingAxisTheoremTest(manifold, normals, aPoints, bPoints))
-			return false;
+		float x = bX - A.getX();
+		float y = bY - A.getY();
+		float l = (float)Math.sqrt(x * x + y * y);
+		if(l == 0) {
+			x = 1.0f;
+			y = 0.0f;
+		} else {
+			x /= l;
+			y /= l;
+		}
+		s.nx[0] = x;
+		s.ny[0] = y;
 		
-		return true;
+		fA.getPoints(A.getX(), A.getY(), A.getRot(), s.ax, s.ay);
+		s.bx[0] = bX - x * bR;
+		s.by[0] = bY - y * bR;
+		s.bx[1] = bX + x * bR;
+		s.by[1] = bY + y * bR;
+		
+		return separatingAxisTheoremTest(manifold, s.nx, s.ny, 1, s.ax, s.ay, 4, s.bx, s.by, 2);
 	}
 
 	/**
@@ -224,20 +188,19 @@ public class CollisionSolver {
 	public boolean doesCollisionExist(CollisionManifold manifold, 
 			RigidBody A, Rectangle fA, 
 			RigidBody B, Rectangle fB) {
-		Vec2D defNormals[] = {
-				new Vec2D(1.0f, 0.0f),
-				new Vec2D(0.0f, 1.0f)
-		};		
-		Vec2D normals[] = new Vec2D[4];
-		Vec2D aPoints[] = fA.getPoints(A.getPos(), A.getRot());
-		Vec2D bPoints[] = fB.getPoints(B.getPos(), B.getRot());
+		Scratch s = s_scratch.get();
+		fA.getPoints(A.getX(), A.getY(), A.getRot(), s.ax, s.ay);
+		fB.getPoints(B.getX(), B.getY(), B.getRot(), s.bx, s.by);
 		
-		for(int i = 0; i < 2; i++)
-			normals[i] = defNormals[i].clone().rotate(A.getRot());
-		for(int i = 2; i < 4; i++)
-			normals[i] = defNormals[i - 2].clone().rotate(B.getRot());
+		// The edge normals of each rectangle are its rotated x and y axes
+		float aCos = (float)Math.cos(A.getRot()), aSin = (float)Math.sin(A.getRot());
+		float bCos = (float)Math.cos(B.getRot()), bSin = (float)Math.sin(B.getRot());
+		s.nx[0] = aCos;  s.ny[0] = aSin;
+		s.nx[1] = -aSin; s.ny[1] = aCos;
+		s.nx[2] = bCos;  s.ny[2] = bSin;
+		s.nx[3] = -bSin; s.ny[3] = bCos;
 		
-		return separatingAxisTheoremTest(manifold, normals, aPoints, bPoints);
+		return separatingAxisTheoremTest(manifold, s.nx, s.ny, 4, s.ax, s.ay, 4, s.bx, s.by, 4);
 	}
 	
 	/**
@@ -256,8 +219,10 @@ public class CollisionSolver {
 				return doesCollisionExist(manifold, A, (Circle)A.getFixture(), B, (Circle)B.getFixture());
 			case Fixture.RECTANGLE_FIXTURE:
 				boolean ret = doesCollisionExist(manifold, B, (Rectangle)B.getFixture(), A, (Circle)A.getFixture());
-				if(ret)
-					manifold.normal.scale(-1.0f);
+				if(ret) {
+					manifold.normal.x = -manifold.normal.x;
+					manifold.normal.y = -manifold.normal.y;
+				}
 				
 				return ret;
 			}
@@ -275,6 +240,233 @@ public class CollisionSolver {
 		return false;
 	}
 	
+	/**
+	 * Finds when a circle moving from (x, y) by (dx, dy) first touches a body, treating the body as
+	 * stationary. Bodies the circle already overlaps at the start are left to the regular narrowphase.
+	 * 
+	 * @param x The x coordinate the circle starts at.
+	 * @param y The y coordinate the circle starts at.
+	 * @param dx The distance the circle moves along x.
+	 * @param dy The distance the circle moves along y.
+	 * @param radius The radius of the circle.
+	 * @param B The body to sweep against.
+	 * @return The fraction of the motion, in [0, 1], at which the circle touches B, or
+	 *         Float.POSITIVE_INFINITY if it does not.
+	 */
+	public float sweepCircle(float x, float y, float dx, float dy, float radius, RigidBody B) {
+		float px = x - B.getX();
+		float py = y - B.getY();
+		
+		switch(B.getFixture().getType()) {
+		case Fixture.CIRCLE_FIXTURE: {
+			float r = radius + ((Circle)B.getFixture()).getRadius();
+			float c = px * px + py * py - r * r;
+			float b = px * dx + py * dy;
+			// Overlapping at the start, or moving away
+			if(c <= 0 || b >= 0)
+				return Float.POSITIVE_INFINITY;
+			
+			float a = dx * dx + dy * dy;
+			float disc = b * b - a * c;
+			if(disc < 0)
+				return Float.POSITIVE_INFINITY;
+			
+			float t = (-b - (float)Math.sqrt(disc)) / a;
+			return t <= 1 ? t : Float.POSITIVE_INFINITY;
+		}
+		case Fixture.RECTANGLE_FIXTURE: {
+			// Sweep a point against the rectangle grown by the radius, in the rectangle's own frame.
+			// This ignores the rounding of the grown corners, so hits near a corner come slightly early
+			Rectangle rect = (Rectangle)B.getFixture();
+			float cos = (float)Math.cos(-B.getRot()), sin = (float)Math.sin(-B.getRot());
+			float lx = px * cos - py * sin, ly = px * sin + py * cos;
+			float ldx = dx * cos - dy * sin, ldy = dx * sin + dy * cos;
+			return sweepPoint(lx, ly, ldx, ldy, rect.getWidth() / 2 + radius, rect.getHeight() / 2 + radius);
+		}
+		}
+		
+		return Float.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * Finds when a circle moving from (x, y) by (dx, dy) first touches an axis aligned box, such as a
+	 * tile, with the same rules as {@link #sweepCircle(float, float, float, float, float, RigidBody)}.
+	 * 
+	 * @param x The x coordinate the circle starts at.
+	 * @param y The y coordinate the circle starts at.
+	 * @param dx The distance the circle moves along x.
+	 * @param dy The distance the circle moves along y.
+	 * @param radius The radius of the circle.
+	 * @param boxX The x coordinate of the center of the box.
+	 * @param boxY The y coordinate of the center of the box.
+	 * @param halfWidth Half the width of the box.
+	 * @param halfHeight Half the height of the box.
+	 * @return The fraction of the motion, in [0, 1], at which the circle touches the box, or
+	 *         Float.POSITIVE_INFINITY if it does not.
+	 */
+	public float sweepCircle(float x, float y, float dx, float dy, float radius,
+			float boxX, float boxY, float halfWidth, float halfHeight) {
+		return sweepPoint(x - boxX, y - boxY, dx, dy, halfWidth + radius, halfHeight + radius);
+	}
+	
+	/**
+	 * Slab test of a point moving from (lx, ly) by (ldx, ldy) against the box [-ex, ex] x [-ey, ey].
+	 */
+	private static float sweepPoint(float lx, float ly, float ldx, float ldy, float ex, float ey) {
+		if(Math.abs(lx) <= ex && Math.abs(ly) <= ey)
+			return Float.POSITIVE_INFINITY;
+		
+		float tMin = 0, tMax = 1;
+		if(ldx == 0) {
+			if(Math.abs(lx) > ex)
+				return Float.POSITIVE_INFINITY;
+		} else {
+			float t1 = (-ex - lx) / ldx, t2 = (ex - lx) / ldx;
+			tMin = Math.max(tMin, Math.min(t1, t2));
+			tMax = Math.min(tMax, Math.max(t1, t2));
+		}
+		
+		if(ldy == 0) {
+			if(Math.abs(ly) > ey)
+				return Float.POSITIVE_INFINITY;
+		} else {
+			float t1 = (-ey - ly) / ldy, t2 = (ey - ly) / ldy;
+			tMin = Math.max(tMin, Math.min(t1, t2));
+			tMax = Math.min(tMax, Math.max(t1, t2));
+		}
+		
+		if(tMin > tMax)
+			return Float.POSITIVE_INFINITY;
+		
+		return tMin;
+	}
+	
+	/**
+	 * Detects a collision between a body and an axis aligned box, such as a tile, which has no body
+	 * of its own. Circles are tested against the closest point of the box, rectangles with the
+	 * Separating Axis Theorem. The normal points from the box towards A.
+	 * 
+	 * @param manifold The collision manifold to store the collision result.
+	 * @param A The body to test.
+	 * @param boxX The x coordinate of the center of the box.
+	 * @param boxY The y coordinate of the center of the box.
+	 * @param halfWidth Half the width of the box.
+	 * @param halfHeight Half the height of the box.
+	 * @return True if a collision exists, false otherwise.
+	 */
+	public boolean detectBox(CollisionManifold manifold, RigidBody A,
+			float boxX, float boxY, float halfWidth, float halfHeight) {
+		switch(A.getFixture().getType()) {
+		case Fixture.CIRCLE_FIXTURE: {
+			float r = ((Circle)A.getFixture()).getRadius();
+			float px = A.getX() - boxX, py = A.getY() - boxY;
+			float dx = px - Math.max(-halfWidth, Math.min(halfWidth, px));
+			float dy = py - Math.max(-halfHeight, Math.min(halfHeight, py));
+			float dist2 = dx * dx + dy * dy;
+			if(dist2 > r * r)
+				return false;
+			
+			if(dist2 > 0) {
+				float dist = (float)Math.sqrt(dist2);
+				manifold.depth = r - dist;
+				manifold.normal.x = dx / dist;
+				manifold.normal.y = dy / dist;
+				return true;
+			}
+			
+			// The center is inside the box, push it out through the closest face
+			float ox = halfWidth - Math.abs(px), oy = halfHeight - Math.abs(py);
+			if(ox < oy) {
+				manifold.depth = ox + r;
+				manifold.normal.x = px < 0 ? -1.0f : 1.0f;
+				manifold.normal.y = 0.0f;
+			} else {
+				manifold.depth = oy + r;
+				manifold.normal.x = 0.0f;
+				manifold.normal.y = py < 0 ? -1.0f : 1.0f;
+			}
+			return true;
+		}
+		case Fixture.RECTANGLE_FIXTURE: {
+			Scratch s = s_scratch.get();
+			((Rectangle)A.getFixture()).getPoints(A.getX(), A.getY(), A.getRot(), s.ax, s.ay);
+			s.bx[0] = boxX - halfWidth; s.by[0] = boxY - halfHeight;
+			s.bx[1] = boxX + halfWidth; s.by[1] = boxY - halfHeight;
+			s.bx[2] = boxX + halfWidth; s.by[2] = boxY + halfHeight;
+			s.bx[3] = boxX - halfWidth; s.by[3] = boxY + halfHeight;
+			
+			float cos = (float)Math.cos(A.getRot()), sin = (float)Math.sin(A.getRot());
+			s.nx[0] = cos;  s.ny[0] = sin;
+			s.nx[1] = -sin; s.ny[1] = cos;
+			s.nx[2] = 1.0f; s.ny[2] = 0.0f;
+			s.nx[3] = 0.0f; s.ny[3] = 1.0f;
+			
+			return separatingAxisTheoremTest(manifold, s.nx, s.ny, 4, s.ax, s.ay, 4, s.bx, s.by, 4);
+		}
+		}
+		
+		return false;
+	}
+
+	/**
+	 * Tests whether a circle at (x, y) overlaps the fixture of a body. A radius of 0 tests whether the point
+	 * lies inside the body.
+	 *
+	 * @param x The x coordinate of the circle's center.
+	 * @param y The y coordinate of the circle's center.
+	 * @param radius The radius of the circle.
+	 * @param B The body to test against.
+	 * @return True if the circle touches or overlaps B, false otherwise.
+	 */
+	public boolean overlapCircle(float x, float y, float radius, RigidBody B) {
+		float px = x - B.getX();
+		float py = y - B.getY();
+
+		switch(B.getFixture().getType()) {
+		case Fixture.CIRCLE_FIXTURE: {
+			float r = radius + ((Circle)B.getFixture()).getRadius();
+			return px * px + py * py <= r * r;
+		}
+		case Fixture.RECTANGLE_FIXTURE: {
+			// The center in the rectangle's own frame
+			Rectangle rect = (Rectangle)B.getFixture();
+			float cos = (float)Math.cos(-B.getRot()), sin = (float)Math.sin(-B.getRot());
+			float lx = px * cos - py * sin, ly = px * sin + py * cos;
+			return overlapPoint(lx, ly, radius, rect.getWidth() / 2, rect.getHeight() / 2);
+		}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Tests whether a circle at (x, y) overlaps an axis aligned box, such as a tile, with the same rules as
+	 * {@link #overlapCircle(float, float, float, RigidBody)}.
+	 *
+	 * @param x The x coordinate of the circle's center.
+	 * @param y The y coordinate of the circle's center.
+	 * @param radius The radius of the circle.
+	 * @param boxX The x coordinate of the center of the box.
+	 * @param boxY The y coordinate of the center of the box.
+	 * @param halfWidth Half the width of the box.
+	 * @param halfHeight Half the height of the box.
+	 * @return True if the circle touches or overlaps the box, false otherwise.
+	 */
+	public boolean overlapCircle(float x, float y, float radius,
+			float boxX, float boxY, float halfWidth, float halfHeight) {
+		return overlapPoint(x - boxX, y - boxY, radius, halfWidth, halfHeight);
+	}
+
+	/**
+	 * Tests whether the point (lx, ly) lies within radius of the box [-ex, ex] x [-ey, ey].
+	 */
+	private static boolean overlapPoint(float lx, float ly, float radius, float ex, float ey) {
+		// Distance from the point to the closest point of the box
+		float dx = lx - Math.max(-ex, Math.min(ex, lx));
+		float dy = ly - Math.max(-ey, Math.min(ey, ly));
+		return dx * dx + dy * dy <= radius * radius;
+	}
+
 	/**
 	 * Resolves the collision between two rigid bodies by applying inverse-mass-weighted movement.
 	 * Handles static and dynamic bodies.
@@ -291,24 +483,34 @@ public class CollisionSolver {
 		if(!detectCollision(manifold, A, B))
 			return false;
 		
-		float totalMass = A.getMass() + B.getMass();
+		resolveCollision(manifold, A, B);
+		return true;
+	}
+	
+	/**
+	 * Separates two rigid bodies along a manifold found by {@link #detectCollision(CollisionManifold, RigidBody, RigidBody)},
+	 * applying inverse-mass-weighted movement. Handles static and dynamic bodies.
+	 * 
+	 * @param manifold The collision manifold containing collision data.
+	 * @param A The first rigid body.
+	 * @param B The second rigid body.
+	 */
+	public void resolveCollision(CollisionManifold manifold, RigidBody A, RigidBody B) {
+		float cx = manifold.normal.x * manifold.depth;
+		float cy = manifold.normal.y * manifold.depth;
 
-		// Handle static cases as before
 		if (A.isStatic()) {
-		    B.move(manifold.normal.clone().scale(-manifold.depth));
+		    B.move(-cx, -cy);
 		} else if (B.isStatic()) {
-		    A.move(manifold.normal.clone().scale(manifold.depth));
+		    A.move(cx, cy);
 		} else {
 		    // Inverse-mass-weighted movement
+		    float totalMass = A.getMass() + B.getMass();
 		    float aRatio = B.getMass() / totalMass;
 		    float bRatio = A.getMass() / totalMass;
 
-		    Vec2D correction = manifold.normal.clone().scale(manifold.depth);
-		    
-		    A.move(correction.clone().scale(aRatio));
-		    B.move(correction.clone().scale(-bRatio));
+		    A.move(cx * aRatio, cy * aRatio);
+		    B.move(-cx * bRatio, -cy * bRatio);
 		}
-		
-		return true;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,18 @@
+package Game;
+
+/**
+ * Handles the contacts between two layers of bodies, see {@link PhysicsWorld#setContactHandler(int, int, ContactHandler)}.
+ * Handlers are only called for contacts between the layers they were registered for, so contacts no
+ * handler cares about are skipped without looking at their bodies.
+ */
+public interface ContactHandler {
+	/**
+	 * Called at the end of a step for every contact between the handler's layers, whatever its type.
+	 *
+	 * @param contacts The contacts of the step.
+	 * @param index The index of the contact in contacts.
+	 * @param flipped false if body A of the contact is on the first layer the handler was registered
+	 * for, true if it is on the second one.
+	 */
+	void handle(ContactStream contacts, int index, boolean flipped);
+}
@@ -0,0 +1,30 @@
+package Game;
+
+/**
+ * Receives the contacts of a PhysicsWorld at the end of every step, see {@link PhysicsWorld#addContactListener(ContactListener)}.
+ * Only begin has to be implemented, so listeners that only care about new contacts do no work per persisting contact.
+ */
+public interface ContactListener {
+	/**
+	 * Called for every contact that began this step.
+	 * 
+	 * @param event The contact.
+	 */
+	void begin(CollisionEvent event);
+
+	/**
+	 * Called for every contact that began in an earlier step and is still touching.
+	 * 
+	 * @param event The contact.
+	 */
+	default void stay(CollisionEvent event) {
+	}
+
+	/**
+	 * Called for every contact that ended this step.
+	 * 
+	 * @param event The contact.
+	 */
+	default void end(CollisionEvent event) {
+	}
+}
@@ -0,0 +1,129 @@
+package Game;
+
+import java.util.Arrays;
+
+/**
+ * The contacts of the last step of a {@link PhysicsWorld}, packed into parallel int arrays so they
+ * can be filtered by layer and type without touching the bodies or their user data.
+ * Ended contacts come first, followed by the contacts that began or stayed, ordered by body ids.
+ * Each contact packs the layers of its bodies and its type into a single category int.
+ */
+public class ContactStream {
+	private int m_count = 0;
+	private int m_bodyA[] = new int[64];
+	private int m_bodyB[] = new int[64];
+	// Layer of body A in bits 0-7, layer of body B in bits 8-15 and the CollisionEvent type above
+	private int m_categories[] = new int[64];
+	private CollisionEvent m_events[] = new CollisionEvent[64];
+
+	/**
+	 * Packs the layers and type of a contact into a category.
+	 *
+	 * @param layerA The layer of body A.
+	 * @param layerB The layer of body B.
+	 * @param type The type of the contact, see {@link CollisionEvent#type}.
+	 * @return The category.
+	 */
+	static int category(int layerA, int layerB, int type) {
+		return layerA | layerB << 8 | type << 16;
+	}
+
+	/**
+	 * Appends a contact, growing the arrays if they are full.
+	 *
+	 * @param event The contact to append.
+	 */
+	void add(CollisionEvent event) {
+		if(m_count == m_events.length) {
+			int capacity = m_count * 2;
+			m_bodyA = Arrays.copyOf(m_bodyA, capacity);
+			m_bodyB = Arrays.copyOf(m_bodyB, capacity);
+			m_categories = Arrays.copyOf(m_categories, capacity);
+			m_events = Arrays.copyOf(m_events, capacity);
+		}
+
+		m_bodyA[m_count] = event.bodyA.id();
+		m_bodyB[m_count] = event.bodyB.id();
+		m_categories[m_count] = category(PhysicsWorld.getLayer(event.bodyA.getSelfMask()),
+				PhysicsWorld.getLayer(event.bodyB.getSelfMask()), event.type);
+		m_events[m_count] = event;
+		m_count++;
+	}
+
+	/**
+	 * Removes all contacts.
+	 */
+	void clear() {
+		Arrays.fill(m_events, 0, m_count, null);
+		m_count = 0;
+	}
+
+	/**
+	 * @return The number of contacts. */
+	public int size() {
+		return m_count;
+	}
+
+	/**
+	 * @param index The index of the contact.
+	 * @return The id of body A of the contact. */
+	public int getBodyA(int index) {
+		return m_bodyA[index];
+	}
+
+	/**
+	 * @param index The index of the contact.
+	 * @return The id of body B of the contact, the grid's tile body for contacts with a tile. */
+	public int getBodyB(int index) {
+		return m_bodyB[index];
+	}
+
+	/**
+	 * @param index The index of the contact.
+	 * @return The packed layers and type of the contact. */
+	public int getCategory(int index) {
+		return m_categories[index];
+	}
+
+	/**
+	 * @param index The index of the contact.
+	 * @return The layer of body A, see {@link PhysicsWorld#getLayer(int)}. */
+	public int getLayerA(int index) {
+		return m_categories[index] & 0xFF;
+	}
+
+	/**
+	 * @param index The index of the contact.
+	 * @return The layer of body B, see {@link PhysicsWorld#getLayer(int)}. */
+	public int getLayerB(int index) {
+		return (m_categories[index] >>> 8) & 0xFF;
+	}
+
+	/**
+	 * @param index The index of the contact.
+	 * @return Whether the contact began, stayed or ended, see {@link CollisionEvent#type}. */
+	public int getType(int index) {
+		return m_categories[index] >>> 16;
+	}
+
+	/**
+	 * @param index The index of the contact.
+	 * @return The event of the contact, which holds its bodies. */
+	public CollisionEvent getEvent(int index) {
+		return m_events[index];
+	}
+
+	/**
+	 * @param index The index of the contact.
+	 * @return The user data of body A, see {@link CollisionEvent#getUserDataA()}. */
+	public Object getUserDataA(int index) {
+		return m_events[index].getUserDataA();
+	}
+
+	/**
+	 * @param index The index of the contact.
+	 * @return The user data of body B or of the touched tile, see {@link CollisionEvent#getUserDataB()}. */
+	public Object getUserDataB(int index) {
+		return m_events[index].getUserDataB();
+	}
+}
@@ -0,0 +1,478 @@
+package Game;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.Arrays;
+
+/**
+ * A broadphase storing elements in the leaves of a binary tree of bounding boxes. Every leaf holds a
+ * "fat" AABB, the element's AABB expanded by a margin, so an element only has to be reinserted once
+ * it moves outside of it. Leaves are inserted next to the sibling that grows the tree the least, and
+ * the tree is kept balanced with rotations, so queries stay logarithmic however the bodies cluster.
+ * Each element is stored exactly once and the depth of the tree is not limited.
+ */
+public class DynamicAABBTree implements BroadPhase {
+	private static final int Null = -1;
+	
+	private final float m_margin;
+	private int m_root = Null;
+	
+	// Nodes, as parallel arrays indexed by node id. A leaf's node id is the index of its element's Leaf proxy
+	private float m_lowX[], m_lowY[], m_highX[], m_highY[];
+	private int m_parent[], m_child1[], m_child2[], m_height[];
+	private TreeElement m_elements[];
+	private int m_capacity;
+	private int m_nodeCount;
+	// Free nodes are chained through m_parent
+	private int m_freeList = Null;
+	
+	// Traversal stacks, one for queries and one for pair finding so pair callbacks may query the tree
+	private int m_queryStack[] = new int[64];
+	private int m_pairStack[] = new int[64];
+	
+	/**
+	 * The proxy of an element, whose index is the node id of the element's leaf.
+	 */
+	private static class Leaf extends Proxy {
+		Leaf(DynamicAABBTree owner, TreeElement e) {
+			super(owner, e);
+		}
+	}
+	
+	/**
+	 * Creates an empty tree.
+	 * 
+	 * @param margin The distance the AABBs stored in the leaves are expanded by on every side.
+	 */
+	public DynamicAABBTree(float margin) {
+		m_margin = margin;
+		resize(16);
+	}
+	
+	private void resize(int capacity) {
+		m_lowX = m_lowX == null ? new float[capacity] : Arrays.copyOf(m_lowX, capacity);
+		m_lowY = m_lowY == null ? new float[capacity] : Arrays.copyOf(m_lowY, capacity);
+		m_highX = m_highX == null ? new float[capacity] : Arrays.copyOf(m_highX, capacity);
+		m_highY = m_highY == null ? new float[capacity] : Arrays.copyOf(m_highY, capacity);
+		m_parent = m_parent == null ? new int[capacity] : Arrays.copyOf(m_parent, capacity);
+		m_child1 = m_child1 == null ? new int[capacity] : Arrays.copyOf(m_child1, capacity);
+		m_child2 = m_child2 == null ? new int[capacity] : Arrays.copyOf(m_child2, capacity);
+		m_height = m_height == null ? new int[capacity] : Arrays.copyOf(m_height, capacity);
+		m_elements = m_elements == null ? new TreeElement[capacity] : Arrays.copyOf(m_elements, capacity);
+		m_capacity = capacity;
+	}
+	
+	private int allocateNode() {
+		int node;
+		if(m_freeList != Null) {
+			node = m_freeList;
+			m_freeList = m_parent[node];
+		} else {
+			if(m_nodeCount == m_capacity)
+				resize(m_capacity * 2);
+			node = m_nodeCount++;
+		}
+		
+		m_parent[node] = Null;
+		m_child1[node] = Null;
+		m_child2[node] = Null;
+		m_height[node] = 0;
+		m_elements[node] = null;
+		return node;
+	}
+	
+	private void freeNode(int node) {
+		m_parent[node] = m_freeList;
+		m_height[node] = -1;
+		m_elements[node] = null;
+		m_freeList = node;
+	}
+	
+	private boolean isLeaf(int node) {
+		return m_child1[node] == Null;
+	}
+	
+	private float perimeter(int node) {
+		return 2 * (m_highX[node] - m_lowX[node] + m_highY[node] - m_lowY[node]);
+	}
+	
+	private float unionPerimeter(int a, int b) {
+		float w = Math.max(m_highX[a], m_highX[b]) - Math.min(m_lowX[a], m_lowX[b]);
+		float h = Math.max(m_highY[a], m_highY[b]) - Math.min(m_lowY[a], m_lowY[b]);
+		return 2 * (w + h);
+	}
+	
+	private void setUnion(int node, int a, int b) {
+		m_lowX[node] = Math.min(m_lowX[a], m_lowX[b]);
+		m_lowY[node] = Math.min(m_lowY[a], m_lowY[b]);
+		m_highX[node] = Math.max(m_highX[a], m_highX[b]);
+		m_highY[node] = Math.max(m_highY[a], m_highY[b]);
+	}
+	
+	private boolean overlaps(int a, int b) {
+		return m_lowX[a] <= m_highX[b] && m_lowX[b] <= m_highX[a] &&
+			   m_lowY[a] <= m_highY[b] && m_lowY[b] <= m_highY[a];
+	}
+	
+	private boolean overlaps(int node, AABB bounds) {
+		return m_lowX[node] <= bounds.tr.x && bounds.bl.x <= m_highX[node] &&
+			   m_lowY[node] <= bounds.bl.y && bounds.tr.y <= m_highY[node];
+	}
+	
+	private boolean contains(int node, AABB bounds) {
+		return m_lowX[node] <= bounds.bl.x && bounds.tr.x <= m_highX[node] &&
+			   m_lowY[node] <= bounds.tr.y && bounds.bl.y <= m_highY[node];
+	}
+	
+	/**
+	 * Inserts a leaf next to the sibling that increases the total perimeter of the tree the least.
+	 */
+	private void insertLeaf(int leaf) {
+		if(m_root == Null) {
+			m_root = leaf;
+			m_parent[leaf] = Null;
+			return;
+		}
+		
+		int index = m_root;
+		while(!isLeaf(index)) {
+			int child1 = m_child1[index];
+			int child2 = m_child2[index];
+			
+			float combined = unionPerimeter(index, leaf);
+			// Cost of pairing the leaf with this node
+			float cost = 2 * combined;
+			// Cost pushed down to the children, as this node has to grow to hold the leaf
+			float inheritance = 2 * (combined - perimeter(index));
+			
+			float cost1 = unionPerimeter(leaf, child1) + inheritance;
+			if(!isLeaf(child1))
+				cost1 -= perimeter(child1);
+			float cost2 = unionPerimeter(leaf, child2) + inheritance;
+			if(!isLeaf(child2))
+				cost2 -= perimeter(child2);
+			
+			if(cost < cost1 && cost < cost2)
+				break;
+			
+			index = cost1 < cost2 ? child1 : child2;
+		}
+		
+		int sibling = index;
+		int oldParent = m_parent[sibling];
+		int newParent = allocateNode();
+		m_parent[newParent] = oldParent;
+		setUnion(newParent, leaf, sibling);
+		m_height[newParent] = m_height[sibling] + 1;
+		m_child1[newParent] = sibling;
+		m_child2[newParent] = leaf;
+		m_parent[sibling] = newParent;
+		m_parent[leaf] = newParent;
+		
+		if(oldParent == Null) {
+			m_root = newParent;
+		} else if(m_child1[oldParent] == sibling) {
+			m_child1[oldParent] = newParent;
+		} else {
+			m_child2[oldParent] = newParent;
+		}
+		
+		refit(m_parent[leaf]);
+	}
+	
+	/**
+	 * Removes a leaf, replacing its parent with its sibling.
+	 */
+	private void removeLeaf(int leaf) {
+		if(leaf == m_root) {
+			m_root = Null;
+			return;
+		}
+		
+		int parent = m_parent[leaf];
+		int grandParent = m_parent[parent];
+		int sibling = m_child1[parent] == leaf ? m_child2[parent] : m_child1[parent];
+		
+		if(grandParent == Null) {
+			m_root = sibling;
+			m_parent[sibling] = Null;
+			freeNode(parent);
+			return;
+		}
+		
+		if(m_child1[grandParent] == parent) {
+			m_child1[grandParent] = sibling;
+		} else {
+			m_child2[grandParent] = sibling;
+		}
+		m_parent[sibling] = grandParent;
+		freeNode(parent);
+		
+		refit(grandParent);
+	}
+	
+	/**
+	 * Walks from node to the root, rebalancing and recomputing the bounds and height of every node on the way.
+	 */
+	private void refit(int node) {
+		while(node != Null) {
+			node = balance(node);
+			
+			int child1 = m_child1[node];
+			int child2 = m_child2[node];
+			m_height[node] = 1 + Math.max(m_height[child1], m_height[child2]);
+			setUnion(node, child1, child2);
+			
+			node = m_parent[node];
+		}
+	}
+	
+	/**
+	 * Rotates the taller grandchild of a up if a's subtrees differ in height by more than one.
+	 * 
+	 * @return The node now at a's position.
+	 */
+	private int balance(int a) {
+		if(isLeaf(a) || m_height[a] < 2)
+			return a;
+		
+		int b = m_child1[a];
+		int c = m_child2[a];
+		int diff = m_height[c] - m_height[b];
+		
+		if(diff > 1)
+			return rotate(a, c, b, false);
+		if(diff < -1)
+			return rotate(a, b, c, true);
+		
+		return a;
+	}
+	
+	/**
+	 * Moves the child up into a's position, making a its child. a keeps the lower of up's children.
+	 * 
+	 * @param a The node to rotate down.
+	 * @param up The taller child of a.
+	 * @param other The other child of a.
+	 * @param upIsChild1 Whether up is a's first child.
+	 * @return up.
+	 */
+	private int rotate(int a, int up, int other, boolean upIsChild1) {
+		int f = m_child1[up];
+		int g = m_child2[up];
+		
+		m_child1[up] = a;
+		m_parent[up] = m_parent[a];
+		m_parent[a] = up;
+		
+		int upParent = m_parent[up];
+		if(upParent == Null) {
+			m_root = up;
+		} else if(m_child1[upParent] == a) {
+			m_child1[upParent] = up;
+		} else {
+			m_child2[upParent] = up;
+		}
+		
+		// up keeps the taller of its children, a takes the other in place of up
+		int keep = m_height[f] > m_height[g] ? f : g;
+		int give = keep == f ? g : f;
+		m_child2[up] = keep;
+		if(upIsChild1) {
+			m_child1[a] = give;
+		} else {
+			m_child2[a] = give;
+		}
+		m_parent[give] = a;
+		
+		setUnion(a, other, give);
+		setUnion(up, a, keep);
+		m_height[a] = 1 + Math.max(m_height[other], m_height[give]);
+		m_height[up] = 1 + Math.max(m_height[a], m_height[keep]);
+		
+		return up;
+	}
+	
+	/**
+	 * Stores the fat AABB of an element in its leaf.
+	 */
+	private void setFatBounds(int leaf, AABB bounds) {
+		m_lowX[leaf] = bounds.bl.x - m_margin;
+		m_lowY[leaf] = bounds.tr.y - m_margin;
+		m_highX[leaf] = bounds.tr.x + m_margin;
+		m_highY[leaf] = bounds.bl.y + m_margin;
+	}
+
+	/**
+	 * Inserts an element into a new leaf, with its AABB expanded by the margin.
+	 * 
+	 * @param e The element to insert.
+	 */
+	@Override
+	public void insert(TreeElement e) {
+		int leaf = allocateNode();
+		m_elements[leaf] = e;
+		new Leaf(this, e).index = leaf;
+		setFatBounds(leaf, e.getAABB());
+		
+		insertLeaf(leaf);
+	}
+
+	/**
+	 * Reinserts an element if its AABB has left its fat AABB, otherwise does nothing.
+	 * 
+	 * @param e The element to update.
+	 */
+	@Override
+	public void update(TreeElement e) {
+		Proxy proxy = e.getProxy(this);
+		if(proxy == null) {
+			insert(e);
+			return;
+		}
+		
+		AABB bounds = e.getAABB();
+		int leaf = proxy.index;
+		if(contains(leaf, bounds))
+			return;
+		
+		removeLeaf(leaf);
+		setFatBounds(leaf, bounds);
+		insertLeaf(leaf);
+	}
+
+	/**
+	 * Removes an element and frees its leaf.
+	 * 
+	 * @param e The element to remove.
+	 */
+	@Override
+	public void remove(TreeElement e) {
+		Proxy proxy = e.getProxy(this);
+		if(proxy == null)
+			return;
+		
+		int leaf = proxy.index;
+		removeLeaf(leaf);
+		freeNode(leaf);
+		
+		proxy.index = -1;
+		proxy.unlink();
+	}
+
+	/**
+	 * Reports every element whose AABB overlaps bounds, descending only into nodes overlapping bounds.
+	 * 
+	 * @param bounds The AABB to query.
+	 * @param callback The callback to report elements to.
+	 */
+	@Override
+	public void query(AABB bounds, QueryCallback callback) {
+		if(m_root == Null)
+			return;
+		
+		int stack[] = m_queryStack;
+		int top = 0;
+		stack[top++] = m_root;
+		
+		while(top > 0) {
+			int node = stack[--top];
+			if(!overlaps(node, bounds))
+				continue;
+			
+			if(isLeaf(node)) {
+				TreeElement e = m_elements[node];
+				if(e.getAABB().intersects(bounds))
+					callback.report(e);
+				continue;
+			}
+			
+			if(top + 2 > stack.length)
+				m_queryStack = stack = Arrays.copyOf(stack, stack.length * 2);
+			stack[top++] = m_child1[node];
+			stack[top++] = m_child2[node];
+		}
+	}
+
+	/**
+	 * Queries the tree with the fat AABB of every leaf. Each pair is reported once, from
+	 * the leaf with the lower node id, if the elements' actual AABBs overlap.
+	 * 
+	 * @param callback The callback to report pairs to.
+	 */
+	@Override
+	public void pairs(PairCallback callback) {
+		if(m_root == Null)
+			return;
+		
+		for(int leaf = 0; leaf < m_nodeCount; leaf++) {
+			if(m_height[leaf] != 0 || m_elements[leaf] == null)
+				continue;
+			
+			TreeElement a = m_elements[leaf];
+			AABB aBounds = a.getAABB();
+			
+			int stack[] = m_pairStack;
+			int top = 0;
+			stack[top++] = m_root;
+			
+			while(top > 0) {
+				int node = stack[--top];
+				if(!overlaps(node, leaf))
+					continue;
+				
+				if(isLeaf(node)) {
+					if(node > leaf && aBounds.intersects(m_elements[node].getAABB()))
+						callback.pair(a, m_elements[node]);
+					continue;
+				}
+				
+				if(top + 2 > stack.length)
+					m_pairStack = stack = Arrays.copyOf(stack, stack.length * 2);
+				stack[top++] = m_child1[node];
+				stack[top++] = m_child2[node];
+			}
+		}
+	}
+
+	/**
+	 * Removes all elements.
+	 */
+	@Override
+	public void clear() {
+		for(int i = 0; i < m_nodeCount; i++) {
+			if(m_elements[i] != null) {
+				m_elements[i].getProxy(this).unlink();
+				m_elements[i] = null;
+			}
+		}
+		
+		m_root = Null;
+		m_nodeCount = 0;
+		m_freeList = Null;
+	}
+
+	/**
+	 * Debug draws the bounds of every node, leaves in blue and internal nodes in gray.
+	 * 
+	 * @param gfx The graphics to draw on.
+	 */
+	@Override
+	public void draw(Graphics2D gfx) {
+		for(int i = 0; i < m_nodeCount; i++) {
+			if(m_height[i] < 0)
+				continue;
+			
+			gfx.setColor(m_height[i] == 0 ? Color.BLUE : Color.GRAY);
+			gfx.drawRect((int)m_lowX[i], (int)m_lowY[i], 
+				(int)(m_highX[i] - m_lowX[i]), (int)(m_highY[i] - m_lowY[i]));
+		}
+	}
+	
+	/**
+	 * @return The height of the tree, 0 for a single leaf and -1 when empty.
+	 */
+	public int getHeight() {
+		return m_root == Null ? -1 : m_height[m_root];
+	}
+}
@@ -22,6 +22,9 @@ public class EntityWorld {
     protected Map<Integer, ComponentSet> m_deferredMoves;
     private HashSet<Integer> m_deferredDelete;
     
+    private int m_componentCount;
+    private long m_structuralChanges;
+    
     public static class Enabled extends Component {
         @Override
         public Class<?> getType() {
@@ -34,6 +37,114 @@ public class EntityWorld {
         }
     }
     
+    /**
+     * A sample of the world's size and churn, as returned by {@link EntityWorld#stats()}.
+     * The byte estimate is based on typical JVM object and collection entry sizes, it is
+     * meant for spotting trends rather than exact accounting. The per-archetype arrays are
+     * grown on demand and reused by later samples, only the first archetypeCount entries are valid.
+     */
+    public static class Stats {
+        // Rough per-object footprints on a 64 bit JVM with compressed references
+        static final int EntityBytes = 112;       // EntityData, its component map and its entry in the entity map
+        static final int ComponentBytes = 64;     // Map entry, boxed key and a small component object
+        static final int SetEntryBytes = 56;      // HashSet entry and boxed entity ID
+        static final int ArchetypeBytes = 160;    // ComponentSet, its ID list, its entity set and superset list
+        static final int DeferredEntryBytes = 48; // Entry in one of the deferred collections
+        
+        public int archetypeCount;
+        public int entityCount;
+        public int componentCount;
+        public int deferredSupersets;
+        public int deferredMoves;
+        public int deferredDeletes;
+        // Total since the world was created, subtract an earlier sample to get the changes in between
+        public long structuralChanges;
+        public long estimatedBytes;
+        public ComponentSet archetypes[] = new ComponentSet[0];
+        public int archetypeSizes[] = new int[0];
+        
+        void reserve(int count) {
+            if (archetypes.length < count) {
+                int size = Math.max(count, archetypes.length * 2);
+                archetypes = Arrays.copyOf(archetypes, size);
+                archetypeSizes = Arrays.copyOf(archetypeSizes, size);
+            }
+        }
+        
+        /**
+         * Returns a single line summary of the stats, suitable for logging every tick.
+         * 
+         * @return A string describing the stats.
+         */
+        @Override
+        public String toString() {
+            return String.format("archetypes=%d entities=%d components=%d deferred=%d/%d/%d changes=%d bytes~%d",
+                    archetypeCount, entityCount, componentCount, 
+                    deferredSupersets, deferredMoves, deferredDeletes,
+                    structuralChanges, estimatedBytes);
+        }
+    }
+    
+    /**
+     * The entities of the world, their sets and their components, as captured by {@link EntityWorld#snapshot(Snapshot)}.
+     * Entities and components are kept by reference in flat arrays, and the state of every {@link PackedComponent}
+     * is copied into a float buffer. The arrays are grown on demand and reused by later snapshots, so taking and
+     * restoring snapshots of a world whose entities are unchanged does not allocate.
+     * Only the state of packed components is rolled back by a restore. Other components are put back as the
+     * same objects, which suits tags and components whose state lives elsewhere, such as the body of a
+     * {@link RigidBodyComponent} captured by {@link PhysicsWorld#snapshot()}, but keeps changes made to their
+     * fields since the snapshot. Components whose fields change during play should implement PackedComponent,
+     * and onRemove() should leave a component able to be brought back.
+     */
+    public static class Snapshot {
+        int idCounter;
+        int entityCount;
+        // Kept boxed, as they are looked up in the entity map on restore
+        Integer ids[] = new Integer[0];
+        EntityData datas[] = new EntityData[0];
+        ComponentSet sets[] = new ComponentSet[0];
+        int compStart[] = new int[1];
+        
+        int compCount;
+        Integer compIds[] = new Integer[0];
+        Component comps[] = new Component[0];
+        // Where the packed state of each component starts in state, or -1 for components that are not packed
+        int stateStart[] = new int[0];
+        int stateSize;
+        float state[] = new float[0];
+        
+        void reserve(int entities, int components) {
+            if (ids.length < entities) {
+                int size = Math.max(entities, ids.length * 2);
+                ids = Arrays.copyOf(ids, size);
+                datas = Arrays.copyOf(datas, size);
+                sets = Arrays.copyOf(sets, size);
+                compStart = Arrays.copyOf(compStart, size + 1);
+            }
+            
+            if (compIds.length < components) {
+                int size = Math.max(components, compIds.length * 2);
+                compIds = Arrays.copyOf(compIds, size);
+                comps = Arrays.copyOf(comps, size);
+                stateStart = Arrays.copyOf(stateStart, size);
+            }
+        }
+        
+        void reserveState(int size) {
+            if (state.length < size)
+                state = Arrays.copyOf(state, Math.max(size, state.length * 2));
+        }
+        
+        /**
+         * Returns the number of entities in the snapshot.
+         * 
+         * @return The entity count.
+         */
+        public int size() {
+            return entityCount;
+        }
+    }
+    
     /**
      * Constructs an EntityWorld. Initializes necessary data structures for entities and components.
      */
@@ -112,6 +223,15 @@ public class EntityWorld {
         return newId;
     }
     
+    /**
+     * Returns a copy of every component type that has been registered with this world.
+     * 
+     * @return The registered component types.
+     */
+    public synchronized Set<Class<?>> getComponentTypes() {
+        return new HashSet<>(m_comps.keySet());
+    }
+    
     /**
      * Ensures that supersets for the provided component set are created.
      * 
@@ -155,6 +275,7 @@ public class EntityWorld {
     public synchronized Entity create() {
         Integer newId = ++m_idCounter;
         m_entities.put(newId, new EntityData());
+        m_structuralChanges++;
         
         m_sets.get(new ComponentSet()).add(newId);
         Entity e = new Entity(m_idCounter, this);
@@ -165,6 +286,8 @@ public class EntityWorld {
     
     /**
      * Creates a clone of the entity with the given ID, copying over its components.
+     * A {@link RigidBodyComponent} is cloned by reference, so the clone shares the original's body
+     * and should be given a body of its own before both are simulated.
      * 
      * @param id The ID of the entity to clone.
      * @return The cloned entity.
@@ -196,6 +319,8 @@ public class EntityWorld {
             for (Integer compId : comps) {
                 data.comps.get(compId).onRemove();
             }
+            m_componentCount -= comps.size();
+            m_structuralChanges++;
             m_entities.remove(id);
         } else {
             m_deferredDelete.add(id);
@@ -224,6 +349,7 @@ public class EntityWorld {
             findOrCreateSet(data.set).remove(id);
             findOrCreateSet(to).add(id);
             data.set = to;
+            m_structuralChanges++;
         } else {
             m_deferredMoves.put(id, to);
         }
@@ -258,6 +384,184 @@ public class EntityWorld {
         }
     }
     
+    /**
+     * Samples the size of the world, see {@link #stats(Stats)}.
+     * 
+     * @return A new Stats object describing the world.
+     */
+    public Stats stats() {
+        return stats(new Stats());
+    }
+    
+    /**
+     * Samples the size of the world into an existing Stats object. This is cheap enough to call
+     * every tick, it is linear only in the number of archetypes and reuses the arrays of out.
+     * The structural change counter (entity creations, destructions and set moves) only ever
+     * grows, so any number of samplers can each take the difference with their own last sample.
+     * 
+     * @param out The Stats object to write into.
+     * @return out, so that calls may be chained together.
+     */
+    public synchronized Stats stats(Stats out) {
+        out.reserve(m_sets.size());
+        
+        int a = 0;
+        int setEntries = 0;
+        for (Map.Entry<ComponentSet, Set<Integer>> entry : m_sets.entrySet()) {
+            int size = entry.getValue().size();
+            out.archetypes[a] = entry.getKey();
+            out.archetypeSizes[a++] = size;
+            setEntries += size;
+        }
+        
+        out.archetypeCount = a;
+        out.entityCount = m_entities.size();
+        out.componentCount = m_componentCount;
+        out.deferredSupersets = m_deferredCreateSuperset.size();
+        out.deferredMoves = m_deferredMoves.size();
+        out.deferredDeletes = m_deferredDelete.size();
+        out.structuralChanges = m_structuralChanges;
+        
+        out.estimatedBytes = (long)out.entityCount * Stats.EntityBytes
+                + (long)out.componentCount * Stats.ComponentBytes
+                + (long)setEntries * Stats.SetEntryBytes
+                + (long)out.archetypeCount * Stats.ArchetypeBytes
+                + (long)(out.deferredSupersets + out.deferredMoves + out.deferredDeletes) * Stats.DeferredEntryBytes;
+        
+        return out;
+    }
+    
+    /**
+     * Captures all entities and their components, see {@link #snapshot(Snapshot)}.
+     * 
+     * @return A new snapshot of the world.
+     */
+    public Snapshot snapshot() {
+        return snapshot(new Snapshot());
+    }
+    
+    /**
+     * Captures all entities, their sets and their components into out, reusing its buffers, along with
+     * the state of every packed component. Must not be called while deferring.
+     * 
+     * @param out The snapshot to write into.
+     * @return out, so that calls may be chained together.
+     */
+    public synchronized Snapshot snapshot(Snapshot out) {
+        if (m_defer)
+            throw new IllegalStateException("Cannot snapshot an EntityWorld while deferring");
+        
+        out.reserve(m_entities.size(), m_componentCount);
+        // Release references left over from a larger previous snapshot
+        if (m_entities.size() < out.entityCount)
+            Arrays.fill(out.datas, m_entities.size(), out.entityCount, null);
+        if (m_componentCount < out.compCount)
+            Arrays.fill(out.comps, m_componentCount, out.compCount, null);
+        
+        int e = 0;
+        int c = 0;
+        int state = 0;
+        for (Map.Entry<Integer, EntityData> entry : m_entities.entrySet()) {
+            EntityData data = entry.getValue();
+            out.ids[e] = entry.getKey();
+            out.datas[e] = data;
+            out.sets[e] = data.set;
+            out.compStart[e] = c;
+            
+            for (Map.Entry<Integer, Component> comp : data.comps.entrySet()) {
+                Component value = comp.getValue();
+                out.compIds[c] = comp.getKey();
+                out.comps[c] = value;
+                out.stateStart[c] = -1;
+                
+                if (value instanceof PackedComponent) {
+                    PackedComponent packed = (PackedComponent) value;
+                    out.reserveState(state + packed.stateSize());
+                    packed.saveState(out.state, state);
+                    out.stateStart[c] = state;
+                    state += packed.stateSize();
+                }
+                c++;
+            }
+            e++;
+        }
+        out.compStart[e] = c;
+        
+        out.idCounter = m_idCounter;
+        out.entityCount = e;
+        out.compCount = c;
+        out.stateSize = state;
+        return out;
+    }
+    
+    /**
+     * Restores the world to the state captured in a snapshot. Entities created since the snapshot
+     * are dropped and entities destroyed since are brought back, with the same IDs and the same
+     * component objects, and the state of every packed component is loaded back into it. Entities
+     * whose components are unchanged keep their data as it is, so restoring does not allocate unless
+     * entities were created, destroyed or changed components since the snapshot. No onRemove callbacks
+     * are invoked. The snapshot is left untouched, so it may be restored again. Must not be called
+     * while deferring.
+     * 
+     * @param snapshot The snapshot to restore.
+     */
+    public synchronized void restore(Snapshot snapshot) {
+        if (m_defer)
+            throw new IllegalStateException("Cannot restore an EntityWorld while deferring");
+        
+        // IDs are never reused, so the entities created since the snapshot are those above its counter
+        Iterator<Map.Entry<Integer, EntityData>> it = m_entities.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, EntityData> entry = it.next();
+            if (entry.getKey() <= snapshot.idCounter)
+                continue;
+            
+            m_sets.get(entry.getValue().set).remove(entry.getKey());
+            it.remove();
+            m_structuralChanges++;
+        }
+        
+        for (int e = 0; e < snapshot.entityCount; e++) {
+            Integer id = snapshot.ids[e];
+            EntityData data = m_entities.get(id);
+            if (data == null) {
+                // Destroyed since the snapshot, its data left every set when it was destroyed
+                data = snapshot.datas[e];
+                data.set = snapshot.sets[e];
+                m_entities.put(id, data);
+                findOrCreateSet(data.set).add(id);
+                m_structuralChanges++;
+            } else if (!data.set.equals(snapshot.sets[e])) {
+                m_sets.get(data.set).remove(id);
+                data.set = snapshot.sets[e];
+                findOrCreateSet(data.set).add(id);
+                m_structuralChanges++;
+            }
+            
+            int from = snapshot.compStart[e], to = snapshot.compStart[e + 1];
+            boolean same = data.comps.size() == to - from;
+            for (int c = from; c < to && same; c++)
+                same = data.comps.get(snapshot.compIds[c]) == snapshot.comps[c];
+            if (!same) {
+                data.comps.clear();
+                for (int c = from; c < to; c++)
+                    data.comps.put(snapshot.compIds[c], snapshot.comps[c]);
+            }
+            
+            for (int c = from; c < to; c++) {
+                if (snapshot.stateStart[c] >= 0)
+                    ((PackedComponent) snapshot.comps[c]).loadState(snapshot.state, snapshot.stateStart[c]);
+            }
+        }
+        
+        m_idCounter = snapshot.idCounter;
+        m_componentCount = snapshot.compCount;
+        
+        m_deferredCreateSuperset.clear();
+        m_deferredMoves.clear();
+        m_deferredDelete.clear();
+    }
+    
     /**
      * Finds or creates a component set for a given set of components.
      * 
@@ -326,6 +630,7 @@ public class EntityWorld {
             }
             
             comps.put(compId, obj);
+            m_componentCount++;
             moveSets(id, curSet.add(compId));
         }
 		
@@ -344,6 +649,7 @@ public class EntityWorld {
 			
 			Component comp = comps.remove(compId);
 			comp.onRemove();
+			m_componentCount--;
 			
 			moveSets(id, curSet.remove(compId));
 		}
@@ -36,7 +36,34 @@ public abstract class Fixture {
 	 * @param rotation the rotation angle of the fixture
 	 * @return the AABB of the fixture
 	 */
-	public abstract AABB getAABB(float rotation);
+	public AABB getAABB(float rotation) {
+		return getAABB(rotation, new Vec2D(0, 0), new AABB(new Vec2D(), new Vec2D()));
+	}
+
+	/**
+	 * Computes the axis-aligned bounding box (AABB) of the fixture at a given rotation and position
+	 * into out, without allocating.
+	 *
+	 * @param rotation the rotation angle of the fixture
+	 * @param pos the position of the fixture
+	 * @param out the AABB to write into
+	 * @return out
+	 */
+	public AABB getAABB(float rotation, Vec2D pos, AABB out) {
+		return getAABB(rotation, pos.x, pos.y, out);
+	}
+
+	/**
+	 * Computes the axis-aligned bounding box (AABB) of the fixture at a given rotation and position
+	 * (x, y) into out, without allocating.
+	 *
+	 * @param rotation the rotation angle of the fixture
+	 * @param x the x coordinate of the fixture
+	 * @param y the y coordinate of the fixture
+	 * @param out the AABB to write into
+	 * @return out
+	 */
+	public abstract AABB getAABB(float rotation, float x, float y, AABB out);
 
 	/**
 	 * Returns the fixture type identifier.
@@ -3,7 +3,7 @@ package Game;
 /**
  * Represents the health component of an entity.
  */
-public class HealthComponent extends Component {
+public class HealthComponent extends Component implements PackedComponent {
     public int health = 50;
 
     /**
@@ -30,4 +30,36 @@ public class HealthComponent extends Component {
         clone.health = health;
         return clone;
     }
+
+    /**
+     * Returns the number of floats written by saveState.
+     * 
+     * @return The size of the packed state.
+     */
+    @Override
+    public int stateSize() {
+        return 1;
+    }
+
+    /**
+     * Writes the health into buf.
+     * 
+     * @param buf The buffer to write into.
+     * @param offset The index to start writing at.
+     */
+    @Override
+    public void saveState(float buf[], int offset) {
+        buf[offset] = health;
+    }
+
+    /**
+     * Reads the health from buf.
+     * 
+     * @param buf The buffer to read from.
+     * @param offset The index to start reading at.
+     */
+    @Override
+    public void loadState(float buf[], int offset) {
+        health = (int)buf[offset];
+    }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package Game;
+
+/**
+ * The HierarchySystem keeps the TransformComponent of every entity with a ParentComponent in sync
+ * with its parent. A child's world transform is only recomputed when its parent's transform has
+ * changed, or its local offset was marked dirty, so children of a static parent cost nothing.
+ */
+public class HierarchySystem extends EntitySystem {
+	private Vec2D m_scratch = new Vec2D();
+	
+    /**
+     * Constructs a HierarchySystem over entities with a ParentComponent and TransformComponent.
+     *
+     * @param world The entity world that contains all entities in the game.
+     */
+	public HierarchySystem(EntityWorld world) {
+		super(world, new ComponentSet()
+				.add(world.component(ParentComponent.class))
+				.add(world.component(TransformComponent.class)));
+	}
+	
+	/**
+	 * Recomputes the world transform of e if its parent has changed. Parents are resolved
+	 * before their children, so a chain of any depth is up to date after a single pass.
+	 */
+	private void resolve(Entity e, int tick) {
+		ParentComponent link = e.get(ParentComponent.class);
+		if(link.resolvedTick == tick || link.parent == null || !link.parent.isAlive())
+			return;
+		link.resolvedTick = tick;
+		
+		if(link.parent.has(ParentComponent.class))
+			resolve(link.parent, tick);
+		
+		TransformComponent parentTransform = link.parent.get(TransformComponent.class);
+		int parentVersion = parentTransform.getVersion();
+		if(parentVersion == link.parentVersion && !link.localDirty)
+			return;
+		
+		TransformComponent transform = e.get(TransformComponent.class);
+		parentTransform.getWorldPoint(link.localPos, m_scratch);
+		transform.pos.x = m_scratch.x;
+		transform.pos.y = m_scratch.y;
+		transform.rot = parentTransform.rot + link.localRot;
+		
+		link.parentVersion = parentVersion;
+		link.localDirty = false;
+	}
+
+    /**
+     * Updates the world transforms of all children whose parent has changed.
+     *
+     * @param tick The current game tick.
+     * @param deltaTime Unused.
+     */
+	@Override
+	public void run(int tick, float deltaTime) {
+		each(new Runnable() {
+			@Override
+			public void each(Entity e) {
+				resolve(e, tick);
+			}
+		});
+	}
+}
@@ -0,0 +1,227 @@
+package Game;
+
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+/**
+ * A broadphase that sorts elements into layers by the lowest bit of their self mask, and keeps each
+ * layer in a broadphase of its own. Pairs are only looked for within and between layers whose
+ * elements can collide according to their masks, so elements that filter each other out, such as
+ * bullets that ignore other bullets, never come up as candidate pairs.
+ */
+public class LayeredBroadPhase implements BroadPhase {
+	// One layer per self mask bit, and a last one for elements without any
+	private static final int LayerCount = 33;
+
+	/**
+	 * The proxy of an element: the layer it is stored in, its index being its place among the layer's elements.
+	 */
+	private static class Entry extends Proxy {
+		int layer;
+
+		Entry(LayeredBroadPhase owner, TreeElement e) {
+			super(owner, e);
+		}
+	}
+
+	private static class Layer {
+		BroadPhase broadPhase;
+		ArrayList<Entry> elements = new ArrayList<Entry>();
+		// Union of the masks of every element added since the last clear, masks are never taken back out
+		int selfMask = 0;
+		int collMask = 0;
+	}
+
+	private Supplier<BroadPhase> m_factory;
+	private Layer m_layers[] = new Layer[LayerCount];
+
+	// The pair callback and element being matched against another layer by m_crossQuery
+	private PairCallback m_pairCallback;
+	private TreeElement m_crossElement;
+	private AABB m_crossBounds = new AABB(new Vec2D(), new Vec2D());
+	private QueryCallback m_crossQuery = new QueryCallback() {
+		@Override
+		public void report(TreeElement e) {
+			m_pairCallback.pair(m_crossElement, e);
+		}
+	};
+
+	/**
+	 * Creates an empty layered broadphase.
+	 *
+	 * @param factory Creates the broadphase of a layer the first time an element is put in it.
+	 */
+	public LayeredBroadPhase(Supplier<BroadPhase> factory) {
+		m_factory = factory;
+	}
+
+	private static int layerOf(TreeElement e) {
+		return Integer.numberOfTrailingZeros(e.getSelfMask());
+	}
+
+	private static boolean canCollide(Layer a, Layer b) {
+		return (a.collMask & b.selfMask) != 0 && (b.collMask & a.selfMask) != 0;
+	}
+
+	private void add(TreeElement e, int index) {
+		Layer layer = m_layers[index];
+		if(layer == null) {
+			layer = new Layer();
+			layer.broadPhase = m_factory.get();
+			m_layers[index] = layer;
+		}
+
+		layer.selfMask |= e.getSelfMask();
+		layer.collMask |= e.getCollMask();
+
+		Entry entry = new Entry(this, e);
+		entry.layer = index;
+		entry.index = layer.elements.size();
+		layer.elements.add(entry);
+		layer.broadPhase.insert(e);
+	}
+
+	/**
+	 * Inserts an element into the layer of the lowest bit of its self mask, creating the layer's
+	 * broadphase on first use. The element's masks are added to the layer's union of masks, which
+	 * decides which layers are paired.
+	 * 
+	 * @param e The element to insert.
+	 */
+	@Override
+	public void insert(TreeElement e) {
+		add(e, layerOf(e));
+	}
+
+	/**
+	 * Moves an element to match its current AABB. An element whose self mask now has a different
+	 * lowest bit is moved into its new layer, and an element that was never inserted is inserted.
+	 * Its collision mask is added to the layer's union, masks are never taken back out of it.
+	 * 
+	 * @param e The element to update.
+	 */
+	@Override
+	public void update(TreeElement e) {
+		int index = layerOf(e);
+		Entry entry = (Entry)e.getProxy(this);
+		if(entry == null || entry.layer != index) {
+			// The self mask changed, or the element is new
+			remove(e);
+			add(e, index);
+			return;
+		}
+
+		Layer layer = m_layers[index];
+		layer.collMask |= e.getCollMask();
+		layer.broadPhase.update(e);
+	}
+
+	/**
+	 * Removes an element from its layer. The layer keeps the masks the element added to its union
+	 * until the next clear, so removing elements never stops two layers from being paired.
+	 * 
+	 * @param e The element to remove.
+	 */
+	@Override
+	public void remove(TreeElement e) {
+		Entry entry = (Entry)e.getProxy(this);
+		if(entry == null)
+			return;
+
+		Layer layer = m_layers[entry.layer];
+		ArrayList<Entry> elements = layer.elements;
+		int index = entry.index;
+		Entry last = elements.remove(elements.size() - 1);
+		if(last != entry) {
+			elements.set(index, last);
+			last.index = index;
+		}
+		layer.broadPhase.remove(e);
+		entry.unlink();
+	}
+
+	/**
+	 * Reports every element overlapping bounds, querying every layer that holds elements.
+	 * 
+	 * @param bounds The AABB to query.
+	 * @param callback The callback to report elements to.
+	 */
+	@Override
+	public void query(AABB bounds, QueryCallback callback) {
+		for(Layer layer : m_layers) {
+			if(layer != null && !layer.elements.isEmpty())
+				layer.broadPhase.query(bounds, callback);
+		}
+	}
+
+	/**
+	 * Reports every pair of elements whose AABBs overlap, among pairs of layers whose masks can
+	 * collide. Pairs within a layer come from the layer's own broadphase. Pairs across two layers
+	 * are found by querying the larger layer with the AABB of every element of the smaller one, so
+	 * each pair is reported once, in no particular order of its elements.
+	 * 
+	 * @param callback The callback to report pairs to.
+	 */
+	@Override
+	public void pairs(PairCallback callback) {
+		m_pairCallback = callback;
+
+		for(int i = 0; i < LayerCount; i++) {
+			Layer a = m_layers[i];
+			if(a == null || a.elements.isEmpty())
+				continue;
+
+			if(canCollide(a, a))
+				a.broadPhase.pairs(callback);
+
+			for(int j = i + 1; j < LayerCount; j++) {
+				Layer b = m_layers[j];
+				if(b == null || b.elements.isEmpty() || !canCollide(a, b))
+					continue;
+
+				// Query the larger layer with every element of the smaller one
+				Layer small = a.elements.size() <= b.elements.size() ? a : b;
+				Layer large = small == a ? b : a;
+				for(int k = 0; k < small.elements.size(); k++) {
+					m_crossElement = small.elements.get(k).element;
+					large.broadPhase.query(m_crossBounds.set(m_crossElement.getAABB()), m_crossQuery);
+				}
+			}
+		}
+
+		m_crossElement = null;
+		m_pairCallback = null;
+	}
+
+	/**
+	 * Removes all elements and resets the masks of every layer. Layers keep their broadphases.
+	 */
+	@Override
+	public void clear() {
+		for(Layer layer : m_layers) {
+			if(layer == null)
+				continue;
+
+			for(Entry entry : layer.elements)
+				entry.unlink();
+			layer.elements.clear();
+			layer.broadPhase.clear();
+			layer.selfMask = 0;
+			layer.collMask = 0;
+		}
+	}
+
+	/**
+	 * Debug draws the broadphase of every layer.
+	 * 
+	 * @param gfx The graphics to draw on.
+	 */
+	@Override
+	public void draw(Graphics2D gfx) {
+		for(Layer layer : m_layers) {
+			if(layer != null)
+				layer.broadPhase.draw(gfx);
+		}
+	}
+}
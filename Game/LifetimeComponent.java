@@ -3,7 +3,7 @@ package Game;
 /**
  * The LifetimeComponent class represents a component that tracks the remaining lifetime of an entity.
  */
-public class LifetimeComponent extends Component {
+public class LifetimeComponent extends Component implements PackedComponent {
     public float timeLeft = 1.0f;
 
     /**
@@ -27,4 +27,36 @@ public class LifetimeComponent extends Component {
         clone.timeLeft = timeLeft;
         return clone;
     }
+
+    /**
+     * Returns the number of floats written by saveState.
+     * 
+     * @return The size of the packed state.
+     */
+    @Override
+    public int stateSize() {
+        return 1;
+    }
+
+    /**
+     * Writes the remaining lifetime into buf.
+     * 
+     * @param buf The buffer to write into.
+     * @param offset The index to start writing at.
+     */
+    @Override
+    public void saveState(float buf[], int offset) {
+        buf[offset] = timeLeft;
+    }
+
+    /**
+     * Reads the remaining lifetime from buf.
+     * 
+     * @param buf The buffer to read from.
+     * @param offset The index to start reading at.
+     */
+    @Override
+    public void loadState(float buf[], int offset) {
+        timeLeft = buf[offset];
+    }
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package Game;
+
+/**
+ * Utility for computing Morton (Z-order) codes of 2D positions.
+ * Positions that are close together in space produce codes that are close
+ * together numerically, so sorting by the code lays spatial neighbours out
+ * next to each other in memory.
+ */
+public class Morton {
+    // Shifts cell coordinates so that negative positions still map to unsigned 16 bit values
+    private static final int CellOffset = 1 << 15;
+
+    /**
+     * Spreads the lower 16 bits of v so that there is a zero bit between each of them.
+     *
+     * @param v The value to spread.
+     * @return The spread value.
+     */
+    private static int spread(int v) {
+        v &= 0x0000FFFF;
+        v = (v | (v << 8)) & 0x00FF00FF;
+        v = (v | (v << 4)) & 0x0F0F0F0F;
+        v = (v | (v << 2)) & 0x33333333;
+        v = (v | (v << 1)) & 0x55555555;
+        return v;
+    }
+
+    /**
+     * Computes the Morton code of a world position, quantized into cells of cellSize.
+     *
+     * @param x The x coordinate of the position.
+     * @param y The y coordinate of the position.
+     * @param cellSize The side length of a single cell.
+     * @return The Morton code of the cell that contains (x, y).
+     */
+    public static int encode(float x, float y, float cellSize) {
+        int cx = (int)Math.floor(x / cellSize) + CellOffset;
+        int cy = (int)Math.floor(y / cellSize) + CellOffset;
+
+        return spread(cx) | (spread(cy) << 1);
+    }
+}
@@ -0,0 +1,32 @@
+package Game;
+
+/**
+ * Implemented by components whose data can be packed into a flat float array.
+ * Packed components are written as columns by {@link WorldSave}, so a whole column
+ * can be copied in and out of a save file at once.
+ */
+public interface PackedComponent {
+
+	/**
+	 * Returns the number of floats written by saveState.
+	 * 
+	 * @return The size of the packed state.
+	 */
+	int stateSize();
+
+	/**
+	 * Writes the state of the component into buf, starting at offset.
+	 * 
+	 * @param buf The buffer to write into.
+	 * @param offset The index to start writing at.
+	 */
+	void saveState(float buf[], int offset);
+
+	/**
+	 * Reads the state written by saveState back into the component.
+	 * 
+	 * @param buf The buffer to read from.
+	 * @param offset The index to start reading at.
+	 */
+	void loadState(float buf[], int offset);
+}
@@ -0,0 +1,59 @@
+package Game;
+
+/**
+ * Attaches an entity to a parent entity. The entity's TransformComponent is derived from the
+ * parent's transform and a local offset by the HierarchySystem, and is only recomputed when
+ * the parent's transform or the local offset has changed.
+ */
+public class ParentComponent extends Component {
+	public Entity parent;
+	
+	// Position and rotation relative to the parent
+	public Vec2D localPos = new Vec2D();
+	public float localRot;
+	
+	// Parent transform version the child's world transform was last computed from
+	int parentVersion = -1;
+	boolean localDirty = true;
+	int resolvedTick = -1;
+	
+	/**
+	 * Creates a ParentComponent attaching to parent at the given local offset.
+	 * 
+	 * @param parent The parent entity, it must have a TransformComponent.
+	 * @param localPos The position relative to the parent.
+	 * @param localRot The rotation relative to the parent, in radians.
+	 */
+	public ParentComponent(Entity parent, Vec2D localPos, float localRot) {
+		this.parent = parent;
+		this.localPos = localPos;
+		this.localRot = localRot;
+	}
+	
+	/**
+	 * Flags the local offset as changed, so the world transform is recomputed on the next update.
+	 */
+	public void markDirty() {
+		localDirty = true;
+	}
+
+	/**
+	 * Returns the type of this component.
+	 *
+	 * @return the class type of this component
+	 */
+	@Override
+	public Class<?> getType() {
+		return ParentComponent.class;
+	}
+
+	/**
+	 * Creates a copy of this component, attached to the same parent.
+	 *
+	 * @return a cloned instance of ParentComponent
+	 */
+	@Override
+	public Component clone() {
+		return new ParentComponent(parent, localPos.clone(), localRot);
+	}
+}
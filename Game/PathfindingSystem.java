@@ -11,6 +11,7 @@ public class PathfindingSystem extends EntitySystem {
 	private Entity m_map;
 	private Entity m_player;
 	private int m_curGen;
+	private Vec2D m_scratch = new Vec2D();
 	
 
     /**
@@ -74,7 +75,7 @@ public class PathfindingSystem extends EntitySystem {
 		
 		m_curGen++;
 		addTarget(openQueue, new IVec2D(0, 0));
-		addTarget(openQueue, Tilemap.getNearestTile(transform.getLocalPoint(m_player.get(TransformComponent.class).pos.clone())));
+		addTarget(openQueue, Tilemap.getNearestTile(transform.getLocalPoint(m_player.get(TransformComponent.class).pos, m_scratch)));
 		
 		while(!openQueue.isEmpty()) {
 			IVec2D curPos = openQueue.poll();
@@ -105,11 +106,18 @@ public class PathfindingSystem extends EntitySystem {
 				RigidBody rb = rbId.body;
 				
 				Vec2D pos = seekerTransform.pos;
-				IVec2D seekerTilePos = Tilemap.getNearestTile(transform.getLocalPoint(pos));
+				IVec2D seekerTilePos = Tilemap.getNearestTile(transform.getLocalPoint(pos, m_scratch));
 				ArrowComponent otherArrow = getTopArrow(m_player.world(), tilemapLayers, seekerTilePos);
 				if(otherArrow == null)
 					return;
 	
+				// A seeker pinned against a wall falls asleep, sending it the same way again would only wake it
+				SeekerComponent seeker = e.get(SeekerComponent.class);
+				if(rb.isSleeping() && seeker.heading.equals(otherArrow.dir))
+					return;
+				seeker.heading.x = otherArrow.dir.x;
+				seeker.heading.y = otherArrow.dir.y;
+	
 				seekerTransform.rot = otherArrow.dir.angle();
 				rb.setLinearVelocity(otherArrow.dir.clone().scale(2));
 			}
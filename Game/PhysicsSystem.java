@@ -5,10 +5,13 @@ import java.util.Set;
 /**
  * The PhysicsSystem class is responsible for managing the physics simulation for all entities
  * with a RigidBody component in the game world. It synchronizes entity transforms with their
- * corresponding physics bodies and progresses the physics world.
+ * corresponding physics bodies and progresses the physics world. It can also periodically sort
+ * the bodies of the world by position, see {@link #setSpatialSort(int, float)}.
  */
 public class PhysicsSystem extends EntitySystem {
 	private PhysicsWorld m_physicsWorld;
+	private int m_sortInterval = 0;
+	private float m_sortCellSize;
 
     /**
      * Constructs a PhysicsSystem to simulate physics for entities with RigidBody components.
@@ -17,14 +20,30 @@ public class PhysicsSystem extends EntitySystem {
      * @param physicsWorld The PhysicsWorld that handles the physics simulation.
      */
 	public PhysicsSystem(EntityWorld world, PhysicsWorld physicsWorld) {
-		super(world, new ComponentSet().add(world.component(RigidBody.class)));
+		super(world, new ComponentSet()
+				.add(world.component(RigidBodyComponent.class))
+				.add(world.component(TransformComponent.class)));
 		m_physicsWorld = physicsWorld;
 	}
 
+    /**
+     * Sorts the bodies of the physics world by the Morton (Z-order) code of their position once every
+     * interval ticks, see {@link PhysicsWorld#sortBodies(float)}. Bodies that are neighbours in space
+     * then become neighbours in the world's body store, which keeps physics memory access local.
+     * Entities are not reordered, as their components are stored per entity rather than in columns.
+     *
+     * @param interval How many ticks to wait between each sort, or 0 to never sort.
+     * @param cellSize The side length of the cells positions are quantized into.
+     */
+	public void setSpatialSort(int interval, float cellSize) {
+		m_sortInterval = interval;
+		m_sortCellSize = cellSize;
+	}
+
 	/**
 	 * Run one physics step over time period of deltaTime
 	 * 
-	 * @param tick Unused
+	 * @param tick The current game tick, deciding when bodies are sorted
 	 * @param delaTime how much time to progress forward*/
 	@Override
 	public void run(int tick, float deltaTime) {		
@@ -35,14 +54,18 @@ public class PhysicsSystem extends EntitySystem {
 				RigidBody rigidBody = bodyId.body;
 				TransformComponent transform = e.get(TransformComponent.class);
 
-				if(!(transform.pos.equals(rigidBody.getPos()) && transform.rot == rigidBody.getRot())) {
+				// Synced separately, as setPos() also overwrites the velocity and should only run when the position changed
+				if(transform.pos.x != rigidBody.getX() || transform.pos.y != rigidBody.getY())
 					rigidBody.setPos(transform.pos);
+				if(transform.rot != rigidBody.getRot())
 					rigidBody.setRot(transform.rot);
-				}
 			}
 		});
 		
+		// Contact listeners may destroy entities, which has to wait until the step is over
+		getWorld().beginDefer();
 		m_physicsWorld.progress(deltaTime);
+		getWorld().endDefer();
 		
 		each(new Runnable() {
 			@Override
@@ -51,11 +74,14 @@ public class PhysicsSystem extends EntitySystem {
 				RigidBody rigidBody = bodyId.body;
 				TransformComponent transform = e.get(TransformComponent.class);
 
-				if(!(transform.pos.equals(rigidBody.getPos()) && transform.rot == rigidBody.getRot())) {
+				if(transform.pos.x != rigidBody.getX() || transform.pos.y != rigidBody.getY() || transform.rot != rigidBody.getRot()) {
 					transform.pos = rigidBody.getPos();
 					transform.rot = rigidBody.getRot();
 				}
 			}
 		});
+		
+		if(m_sortInterval > 0 && tick % m_sortInterval == 0)
+			m_physicsWorld.sortBodies(m_sortCellSize);
 	}
 }
\ No newline at end of file
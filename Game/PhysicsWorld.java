@@ -2,49 +2,437 @@ package Game;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * The PhysicsWorld class manages the physics simulation for all rigid bodies in the game.
  * It handles the creation, destruction, and updating of rigid bodies, and performs collision detection and resolution.
  */
 public class PhysicsWorld {
-    private Integer m_idCounter = 0;
-    private Map<Integer, RigidBody> m_bodies;
-    private QuadTree m_quadTree;
+    // Body ids hold a slot in their low bits and the slot's generation above, which changes every
+    // time the slot is freed so that the ids of destroyed bodies do not find the slot's next body
+    private static final int SlotBits = 20;
+    private static final int SlotMask = (1 << SlotBits) - 1;
+    private static final int MaxGeneration = Integer.MAX_VALUE >>> SlotBits;
+    // The body in every slot, the generation of every slot, and the free slots, last freed on top
+    private RigidBody m_slots[] = new RigidBody[64];
+    private int m_generations[] = new int[64];
+    private int m_slotCount = 0;
+    private int m_freeSlots[] = new int[64];
+    private int m_freeCount = 0;
+    // Kinematic state of every body in the world, one row per body, integrated all at once.
+    // Its rows double as the dense list of bodies, as they are packed by swapping the last row into removed ones
+    private BodyStore m_store = new BodyStore(64);
+    private List<RigidBody> m_bodyList = new AbstractList<RigidBody>() {
+        @Override
+        public RigidBody get(int index) {
+            if (index < 0 || index >= m_store.count)
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + m_store.count + " bodies");
+            return m_store.bodies[index];
+        }
+
+        @Override
+        public int size() {
+            return m_store.count;
+        }
+    };
+    private BroadPhase m_broadPhase;
+    // Static bodies never move, so they are kept apart and only ever queried by dynamic bodies
+    private BroadPhase m_staticBroadPhase;
     private CollisionSolver m_solver;
     private ArrayList<CollisionSolver.CollisionManifold> m_manifolds;
     private ArrayList<CollisionEvent> m_collisionEvents;
 
+    // Contacts, ordered by body id pair, carried between steps to tell new contacts from persisting ones
+    private ArrayList<CollisionEvent> m_contacts = new ArrayList<CollisionEvent>();
+    private ArrayList<CollisionEvent> m_nextContacts = new ArrayList<CollisionEvent>();
+    private ArrayList<CollisionEvent> m_beginEvents = new ArrayList<CollisionEvent>();
+    private ArrayList<CollisionEvent> m_endEvents = new ArrayList<CollisionEvent>();
+    private ArrayList<ContactListener> m_contactListeners = new ArrayList<ContactListener>();
+    // The contacts of the last step packed by layer, and the handler for every pair of layers
+    private ContactStream m_contactStream = new ContactStream();
+    private ContactHandler m_contactHandlers[] = new ContactHandler[LayerCount * LayerCount];
+    private boolean m_contactHandlerFlipped[] = new boolean[LayerCount * LayerCount];
+
+    /** Number of contact layers, one per self mask bit and one for bodies without any, see {@link #getLayer(int)} */
+    public static final int LayerCount = 33;
+
+    // Pairs with fewer candidates than this are tested on the calling thread
+    private static final int ParallelPairThreshold = 256;
+    // Number of pairs a single narrowphase task tests without splitting further
+    private static final int NarrowPhaseChunk = 64;
+
     /**
-     * Constructs a PhysicsWorld with a given width and height for the QuadTree.
+     * A candidate pair of bodies found by the broadphase, and the result of testing it in the narrowphase.
+     * Pairs are pooled and reused between steps.
+     */
+    static class ContactPair {
+        RigidBody a;
+        RigidBody b;
+        // Lower body id in the high 32 bits, higher in the low, so pairs sort the same whatever the broadphase
+        long key;
+        // Owned by the pair and overwritten each step
+        final CollisionSolver.CollisionManifold manifold = new CollisionSolver.CollisionManifold();
+        boolean hit;
+        // Set when b stands in for a tile of this grid, whose first cell and box are kept here
+        TileGrid grid;
+        int tileX, tileY;
+        float boxX, boxY, boxHalfWidth, boxHalfHeight;
+        // Region the pair is resolved in, unless it crosses a region border and is left to the seam pass
+        long region;
+        boolean seam;
+    }
+
+    private static final Comparator<ContactPair> PairOrder = new Comparator<ContactPair>() {
+        @Override
+        public int compare(ContactPair a, ContactPair b) {
+            return Long.compare(a.key, b.key);
+        }
+    };
+
+    private static final Comparator<ContactPair> RegionOrder = new Comparator<ContactPair>() {
+        @Override
+        public int compare(ContactPair a, ContactPair b) {
+            if (a.seam != b.seam)
+                return a.seam ? 1 : -1;
+            return Long.compare(a.region, b.region);
+        }
+    };
+
+    private ContactPair m_pairs[] = new ContactPair[0];
+    private int m_pairCount;
+
+    // Size of the regions colliding pairs are resolved in concurrently, disabled while the width is 0,
+    // and vertical strips while the height is 0
+    private float m_regionWidth = 0, m_regionHeight = 0;
+    // Colliding pairs grouped by region, seam pairs last, and the index each group starts at
+    private ContactPair m_regionPairs[] = new ContactPair[0];
+    private int m_regionStarts[] = new int[16];
+
+    // Times the phases of every step and counts the work done in them
+    private StepProfiler m_profiler = new StepProfiler(300);
+    private StepProfiler.Stats m_stats = m_profiler.getStats();
+
+    // Sleeping
+    private boolean m_allowSleep = true;
+    private float m_linearSleepTolerance = 0.05f;
+    private float m_angularSleepTolerance = 0.05f;
+    private int m_stepsToSleep = 60;
+
+    // Bodies awake during the current step, and the islands they are grouped into by their contacts
+    private RigidBody m_awake[] = new RigidBody[0];
+    private int m_awakeCount;
+    private int m_islandParent[] = new int[0];
+    private int m_islandSteps[] = new int[0];
+    // Bodies of the islands being put to sleep, indexed by their root
+    private ArrayList<RigidBody> m_islands[] = newIslandArray(0);
+
+    // Filters broadphase pairs by collision mask, then queues them for the narrowphase
+    private BroadPhase.PairCallback m_pairSolver = new BroadPhase.PairCallback() {
+        @Override
+        public void pair(TreeElement a, TreeElement b) {
+            RigidBody rA = (RigidBody) a;
+            RigidBody rB = (RigidBody) b;
+
+            m_stats.candidatePairs++;
+            if (!canCollide(rA, rB)) {
+                m_stats.maskRejectedPairs++;
+                return;
+            }
+
+            // Neither body can move, so the pair cannot change
+            if (!isAwake(rA) && !isAwake(rB)) {
+                return;
+            }
+
+            int idA = rA.id(), idB = rB.id();
+            queuePair(rA, rB, ((long) Math.min(idA, idB) << 32) | Math.max(idA, idB));
+        }
+    };
+
+    // Grids of tiles that bodies collide with directly, and the static body standing in for each grid's tiles
+    private static final int MaxTileGrids = 16;
+    private ArrayList<TileGrid> m_tileGrids = new ArrayList<TileGrid>();
+    private ArrayList<RigidBody> m_tileBodies = new ArrayList<RigidBody>();
+    // Cells under the bounds last passed to cellRange(), and the tile last found in a cell
+    private Vec2D m_gridOrigin = new Vec2D();
+    private int m_cellX0, m_cellY0, m_cellX1, m_cellY1;
+    private int m_tile[] = new int[4];
+
+    // How far a swept bullet is stopped inside the body it hits, so the narrowphase reports the contact
+    private static final float SweepSlop = 0.1f;
+
+    // Bullets moved this step, swept once every body has been integrated
+    private ArrayList<RigidBody> m_bullets = new ArrayList<RigidBody>();
+
+    // The bullet being swept, its motion, and the earliest time of impact found so far
+    private RigidBody m_sweepBody;
+    private float m_sweepX, m_sweepY, m_sweepDX, m_sweepDY, m_sweepRadius, m_sweepToi;
+    private AABB m_sweepBounds = new AABB(new Vec2D(), new Vec2D());
+    private BroadPhase.QueryCallback m_sweepQuery = new BroadPhase.QueryCallback() {
+        @Override
+        public void report(TreeElement e) {
+            RigidBody other = (RigidBody) e;
+            if (other == m_sweepBody || !canCollide(m_sweepBody, other))
+                return;
+
+            float toi = m_solver.sweepCircle(m_sweepX, m_sweepY, m_sweepDX, m_sweepDY, m_sweepRadius, other);
+            if (toi < m_sweepToi)
+                m_sweepToi = toi;
+        }
+    };
+
+    /**
+     * Tests a range of the queued pairs for collisions, splitting in halves until the range is small enough.
+     * Only reads body state, so ranges can be tested concurrently.
+     */
+    private class NarrowPhaseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int m_from, m_to;
+
+        NarrowPhaseTask(int from, int to) {
+            m_from = from;
+            m_to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (m_to - m_from <= NarrowPhaseChunk) {
+                detectPairs(m_from, m_to);
+                return;
+            }
+
+            int mid = (m_from + m_to) >>> 1;
+            invokeAll(new NarrowPhaseTask(m_from, mid), new NarrowPhaseTask(mid, m_to));
+        }
+    }
+
+    /**
+     * Resolves the colliding pairs of a range of regions, splitting in halves until a single region is left.
+     * Regions share no dynamic body, and static bodies are never moved, so regions can be resolved concurrently.
+     */
+    private class RegionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int m_from, m_to;
+
+        RegionTask(int from, int to) {
+            m_from = from;
+            m_to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (m_to - m_from == 1) {
+                resolvePairs(m_regionPairs, m_regionStarts[m_from], m_regionStarts[m_to]);
+                return;
+            }
+
+            int mid = (m_from + m_to) >>> 1;
+            invokeAll(new RegionTask(m_from, mid), new RegionTask(mid, m_to));
+        }
+    }
+
+    // Pairs the dynamic body being tested with every static body its AABB overlaps
+    private RigidBody m_staticQueryBody;
+    // Copy of the queried body's AABB, as resolving a pair moves the body and updates its own AABB
+    private AABB m_staticQueryBounds = new AABB(new Vec2D(), new Vec2D());
+    private BroadPhase.QueryCallback m_staticQuery = new BroadPhase.QueryCallback() {
+        @Override
+        public void report(TreeElement e) {
+            m_pairSolver.pair(m_staticQueryBody, e);
+        }
+    };
+
+    /**
+     * Receives the bodies and tiles found by the spatial queries of a PhysicsWorld, such as
+     * {@link PhysicsWorld#queryAABB(AABB, int, BodyCallback)}.
+     */
+    public interface BodyCallback {
+        /**
+         * Called once for every body and every tile matching the query.
+         *
+         * @param body The matching body, or the body standing in for the grid of a matching tile.
+         * @param userData The user data of the body, or of the tile for tiles.
+         */
+        void report(RigidBody body, Object userData);
+    }
+
+    /**
+     * The closest body or tile hit by a ray, as found by {@link PhysicsWorld#raycast(Vec2D, Vec2D, float, int, RaycastHit)}.
+     * Hits may be reused between raycasts.
+     */
+    public static class RaycastHit {
+        /**
+         * The body that was hit, or the body standing in for the grid of the tile that was hit.
+         */
+        public RigidBody body;
+        /**
+         * The user data of the body that was hit, or of the tile for tiles.
+         */
+        public Object userData;
+        /**
+         * The distance from the origin of the ray to the hit.
+         */
+        public float distance;
+        /**
+         * The point at which the ray hit the body.
+         */
+        public float x, y;
+    }
+
+    // The query being answered by m_shapeQuery: bodies must share a bit with the mask, overlap the bounds
+    // and, unless the radius is negative, overlap the circle
+    private int m_shapeMask;
+    private float m_shapeX, m_shapeY, m_shapeRadius;
+    private BodyCallback m_shapeCallback;
+    private AABB m_shapeBounds = new AABB(new Vec2D(), new Vec2D());
+    private BroadPhase.QueryCallback m_shapeQuery = new BroadPhase.QueryCallback() {
+        @Override
+        public void report(TreeElement e) {
+            RigidBody body = (RigidBody) e;
+            if ((body.getSelfMask() & m_shapeMask) == 0 || !body.getAABB().intersects(m_shapeBounds))
+                return;
+            if (m_shapeRadius >= 0 && !m_solver.overlapCircle(m_shapeX, m_shapeY, m_shapeRadius, body))
+                return;
+
+            m_shapeCallback.report(body, body.getUserData());
+        }
+    };
+
+    // The ray being cast, and the closest hit found so far, with its tile if it is one
+    private float m_rayX, m_rayY, m_rayDX, m_rayDY, m_rayToi;
+    private int m_rayMask;
+    private RigidBody m_rayBody;
+    private TileGrid m_rayGrid;
+    private int m_rayTileX, m_rayTileY;
+    private BroadPhase.QueryCallback m_rayQuery = new BroadPhase.QueryCallback() {
+        @Override
+        public void report(TreeElement e) {
+            RigidBody body = (RigidBody) e;
+            if ((body.getSelfMask() & m_rayMask) == 0)
+                return;
+
+            float toi = m_solver.sweepCircle(m_rayX, m_rayY, m_rayDX, m_rayDY, 0, body);
+            if (toi < m_rayToi) {
+                m_rayToi = toi;
+                m_rayBody = body;
+            }
+        }
+    };
+
+    /**
+     * The bodies of a PhysicsWorld and their kinematic state, as captured by {@link PhysicsWorld#snapshot(Snapshot)}.
+     * State is packed into primitive arrays that are grown on demand and reused by later snapshots.
+     * Bodies are kept by reference, so bodies destroyed after the snapshot can be brought back by a restore.
+     */
+    public static class Snapshot {
+        // Id slot allocator state
+        int slotCount;
+        int generations[] = new int[0];
+        int freeCount;
+        int freeSlots[] = new int[0];
+        int bodyCount;
+        RigidBody bodies[] = new RigidBody[0];
+        float state[] = new float[0];
+        int masks[] = new int[0];
+        boolean marked[] = new boolean[0];
+
+        void reserve(int count) {
+            if (bodies.length >= count)
+                return;
+
+            int size = Math.max(count, bodies.length * 2);
+            bodies = Arrays.copyOf(bodies, size);
+            state = Arrays.copyOf(state, size * RigidBody.StateStride);
+            masks = Arrays.copyOf(masks, size * 2);
+            marked = Arrays.copyOf(marked, size);
+        }
+
+        /**
+         * Returns the number of bodies in the snapshot.
+         *
+         * @return The body count.
+         */
+        public int size() {
+            return bodyCount;
+        }
+    }
+
+    /**
+     * Constructs a PhysicsWorld that stores dynamic bodies in a {@link QuadTree}. The tree grows to
+     * fit bodies outside of the given area, so it is only a hint of the expected world size.
      *
-     * @param w The width of the world (for QuadTree).
-     * @param h The height of the world (for QuadTree).
+     * @param w The initial width of the QuadTree.
+     * @param h The initial height of the QuadTree.
      */
     public PhysicsWorld(int w, int h) {
-        m_quadTree = new QuadTree(w, h);
+        this(new QuadTree(w, h));
+    }
+
+    /**
+     * Constructs a PhysicsWorld that finds candidate collision pairs with the given broadphase.
+     * Static bodies are kept in a {@link DynamicAABBTree} of their own.
+     *
+     * @param broadPhase The broadphase to store dynamic bodies in.
+     */
+    public PhysicsWorld(BroadPhase broadPhase) {
+        this(broadPhase, new DynamicAABBTree(0));
+    }
+
+    /**
+     * Constructs a PhysicsWorld that keeps dynamic and static bodies in separate broadphases.
+     * The static broadphase is only changed when static bodies are created or destroyed.
+     *
+     * @param broadPhase The broadphase to store dynamic bodies in.
+     * @param staticBroadPhase The broadphase to store static bodies in.
+     */
+    public PhysicsWorld(BroadPhase broadPhase, BroadPhase staticBroadPhase) {
+        m_broadPhase = broadPhase;
+        m_staticBroadPhase = staticBroadPhase;
         m_solver = new CollisionSolver();
-        m_bodies = new HashMap<Integer, RigidBody>();
         m_manifolds = new ArrayList<CollisionSolver.CollisionManifold>();
         m_collisionEvents = new ArrayList<CollisionEvent>();
     }
 
     /**
-     * Returns the map of all rigid bodies in the world.
+     * Returns a read only view of all rigid bodies in the world. The view is packed: destroying a body
+     * moves the last body into its place, and {@link #sortBodies(float)} reorders it.
+     *
+     * @return The bodies of the world.
+     */
+    public List<RigidBody> getBodyList() {
+        return m_bodyList;
+    }
+
+    /**
+     * Returns the number of rigid bodies in the world.
+     *
+     * @return The body count.
+     */
+    public int getBodyCount() {
+        return m_store.count;
+    }
+
+    /**
+     * Returns the store holding the kinematic state of the bodies in this world.
      *
-     * @return A map where the key is the rigid body's ID, and the value is the RigidBody object.
+     * @return The body store of the world.
      */
-    public Map<Integer, RigidBody> getBodyList() {
-        return m_bodies;
+    BodyStore getBodyStore() {
+        return m_store;
     }
 
     /**
      * Creates a new rigid body with the specified position, rotation, and static status.
+     * The body takes the most recently freed id slot, or a new one, so ids are not handed out in
+     * order, and a slot only hands out an id again after being freed over 2000 times.
      *
      * @param pos The initial position of the rigid body.
      * @param rot The initial rotation of the rigid body.
@@ -52,11 +440,69 @@ public class PhysicsWorld {
      * @return The created RigidBody object.
      */
     public RigidBody create(Vec2D pos, float rot, boolean isStatic) {
-        Integer newId = ++m_idCounter;
+        int slot;
+        if (m_freeCount > 0) {
+            slot = m_freeSlots[--m_freeCount];
+        } else {
+            if (m_slotCount > SlotMask)
+                throw new IllegalStateException("Cannot have more than " + (SlotMask + 1) + " bodies");
+            if (m_slotCount == m_slots.length) {
+                m_slots = Arrays.copyOf(m_slots, m_slotCount * 2);
+                m_generations = Arrays.copyOf(m_generations, m_slotCount * 2);
+            }
+
+            slot = m_slotCount++;
+            m_generations[slot] = 1;
+        }
+
+        RigidBody body = new RigidBody(this, (m_generations[slot] << SlotBits) | slot, pos, rot, isStatic);
+        m_slots[slot] = body;
+        return body;
+    }
+
+    /**
+     * Adds a grid of tiles that bodies collide with directly. The tiles are reported in contacts by a
+     * single static body standing in for the whole grid, see {@link #getTileBody(TileGrid)}, with the
+     * user data of the tile that was touched. Adding a grid again has no effect.
+     *
+     * @param grid The grid to collide with.
+     */
+    public void addTileGrid(TileGrid grid) {
+        if (m_tileGrids.contains(grid))
+            return;
+        if (m_tileGrids.size() == MaxTileGrids)
+            throw new IllegalStateException("Cannot add more than " + MaxTileGrids + " tile grids");
+
+        RigidBody body = new RigidBody(null, 0, new Vec2D(), 0, true);
+        body.attachFixture(new Rectangle(0, grid.getTileSize(), grid.getTileSize()));
+        m_tileGrids.add(grid);
+        m_tileBodies.add(body);
+    }
+
+    /**
+     * Removes a grid of tiles added by {@link #addTileGrid(TileGrid)}.
+     *
+     * @param grid The grid to remove.
+     */
+    public void removeTileGrid(TileGrid grid) {
+        int index = m_tileGrids.indexOf(grid);
+        if (index < 0)
+            return;
 
-        m_bodies.put(newId, new RigidBody(this, newId, pos, rot, isStatic));
+        m_tileGrids.remove(index);
+        m_tileBodies.remove(index);
+    }
 
-        return m_bodies.get(newId);
+    /**
+     * Returns the static body standing in for the tiles of a grid in contacts. Its collision masks
+     * apply to every tile of the grid.
+     *
+     * @param grid The grid to get the body of.
+     * @return The body of the grid, or null if the grid was not added.
+     */
+    public RigidBody getTileBody(TileGrid grid) {
+        int index = m_tileGrids.indexOf(grid);
+        return index < 0 ? null : m_tileBodies.get(index);
     }
 
     /**
@@ -66,16 +512,43 @@ public class PhysicsWorld {
      * @return The RigidBody object with the specified ID, or null if not found.
      */
     public RigidBody get(Integer id) {
-        return m_bodies.get(id);
+        return get(id.intValue());
     }
 
     /**
-     * Destroys a rigid body by its ID.
+     * Retrieves a rigid body by its ID, without boxing it.
+     *
+     * @param id The ID of the rigid body to retrieve.
+     * @return The RigidBody object with the specified ID, or null if not found.
+     */
+    public RigidBody get(int id) {
+        int slot = id & SlotMask;
+        if (id <= 0 || slot >= m_slotCount)
+            return null;
+
+        RigidBody body = m_slots[slot];
+        return body != null && body.id() == id ? body : null;
+    }
+
+    /**
+     * Destroys a rigid body by its ID. The body keeps its last state, which stays readable.
      *
      * @param id The ID of the rigid body to destroy.
      */
     public void destroy(Integer id) {
-        m_bodies.remove(id);
+        RigidBody body = get(id.intValue());
+        if (body == null)
+            return;
+
+        int slot = id & SlotMask;
+        m_slots[slot] = null;
+        m_generations[slot] = m_generations[slot] == MaxGeneration ? 1 : m_generations[slot] + 1;
+        if (m_freeCount == m_freeSlots.length)
+            m_freeSlots = Arrays.copyOf(m_freeSlots, m_freeCount * 2);
+        m_freeSlots[m_freeCount++] = slot;
+
+        (body.isStatic() ? m_staticBroadPhase : m_broadPhase).remove(body);
+        body.detach();
     }
 
     /**
@@ -88,66 +561,814 @@ public class PhysicsWorld {
     }
 
     /**
-     * Progresses the physics simulation by a time step (deltaTime).
-     * This includes updating rigid body positions, checking for collisions, and resolving them.
+     * Captures every body and its kinematic state, see {@link #snapshot(Snapshot)}.
+     *
+     * @return A new snapshot of the world.
+     */
+    public Snapshot snapshot() {
+        return snapshot(new Snapshot());
+    }
+
+    /**
+     * Captures every body, its position, velocity, rotation and collision masks into out, reusing its buffers.
+     *
+     * @param out The snapshot to write into.
+     * @return out, so that calls may be chained together.
+     */
+    public Snapshot snapshot(Snapshot out) {
+        int count = m_store.count;
+        out.reserve(count);
+        // Release references left over from a larger previous snapshot
+        if (count < out.bodyCount)
+            Arrays.fill(out.bodies, count, out.bodyCount, null);
+
+        for (int i = 0; i < count; i++) {
+            RigidBody body = m_store.bodies[i];
+            out.bodies[i] = body;
+            body.saveState(out.state, i * RigidBody.StateStride);
+            out.masks[i * 2] = body.getSelfMask();
+            out.masks[i * 2 + 1] = body.getCollMask();
+            out.marked[i] = body.isMarkedForDeletion();
+        }
+
+        if (out.generations.length < m_slotCount)
+            out.generations = new int[m_slots.length];
+        if (out.freeSlots.length < m_freeCount)
+            out.freeSlots = new int[m_freeSlots.length];
+        System.arraycopy(m_generations, 0, out.generations, 0, m_slotCount);
+        System.arraycopy(m_freeSlots, 0, out.freeSlots, 0, m_freeCount);
+        out.slotCount = m_slotCount;
+        out.freeCount = m_freeCount;
+        out.bodyCount = count;
+        return out;
+    }
+
+    /**
+     * Restores the world to the bodies and state captured in a snapshot. Bodies created since the
+     * snapshot are dropped and bodies destroyed since are brought back. The snapshot is left
+     * untouched, so it may be restored again. When the world still holds exactly the bodies of the
+     * snapshot, as when rewinding a few steps, their state is written back into the existing store
+     * and the broadphases are only updated, so restoring allocates nothing.
+     *
+     * @param snapshot The snapshot to restore.
+     */
+    public void restore(Snapshot snapshot) {
+        m_collisionEvents.clear();
+        m_contactStream.clear();
+        m_contacts.clear();
+        m_beginEvents.clear();
+        m_endEvents.clear();
+        m_manifolds.clear();
+
+        boolean sameBodies = m_store.count == snapshot.bodyCount;
+        for (int i = 0; sameBodies && i < snapshot.bodyCount; i++)
+            sameBodies = snapshot.bodies[i].store == m_store;
+
+        if (!sameBodies) {
+            m_broadPhase.clear();
+            m_staticBroadPhase.clear();
+
+            // Bodies created since the snapshot are left behind in the old store, so they stay readable
+            BodyStore store = new BodyStore(Math.max(snapshot.bodyCount, 64));
+            for (int i = 0; i < snapshot.bodyCount; i++)
+                snapshot.bodies[i].moveToStore(store);
+            m_store = store;
+
+            m_slots = new RigidBody[Math.max(snapshot.slotCount, 64)];
+        } else if (m_slots.length < snapshot.slotCount) {
+            m_slots = Arrays.copyOf(m_slots, snapshot.slotCount);
+        }
+
+        if (m_generations.length != m_slots.length)
+            m_generations = new int[m_slots.length];
+        if (m_freeSlots.length < snapshot.freeCount)
+            m_freeSlots = new int[Math.max(snapshot.freeCount, 64)];
+        System.arraycopy(snapshot.generations, 0, m_generations, 0, snapshot.slotCount);
+        System.arraycopy(snapshot.freeSlots, 0, m_freeSlots, 0, snapshot.freeCount);
+        m_slotCount = snapshot.slotCount;
+        m_freeCount = snapshot.freeCount;
+
+        for (int i = 0; i < snapshot.bodyCount; i++) {
+            RigidBody body = snapshot.bodies[i];
+            body.loadState(snapshot.state, i * RigidBody.StateStride);
+            body.setSelfMask(snapshot.masks[i * 2]);
+            body.setCollMask(snapshot.masks[i * 2 + 1]);
+            body.setMarkedForDeletion(snapshot.marked[i]);
+            m_slots[body.id() & SlotMask] = body;
+
+            // Woken dynamic bodies are moved in their broadphase by the next step, static ones are not
+            if (sameBodies && body.isStatic() && body.isInTree())
+                m_staticBroadPhase.update(body);
+        }
+    }
+
+    /**
+     * Reorders the bodies, and with them the rows of the body store, by the Morton code of each body's
+     * position, so that bodies that are close in space are also visited, integrated and inserted into
+     * the broadphase together.
+     *
+     * @param cellSize The side length of the cells positions are quantized into.
+     */
+    public void sortBodies(float cellSize) {
+        int count = m_store.count;
+        if (count < 2)
+            return;
+
+        // Pack (morton, id) into a long so a single primitive sort orders the bodies
+        long packed[] = new long[count];
+        for (int i = 0; i < count; i++) {
+            RigidBody body = m_store.bodies[i];
+            long k = Morton.encode(body.getX(), body.getY(), cellSize) ^ Integer.MIN_VALUE;
+            packed[i] = (k << 32) | (body.id() & 0xFFFFFFFFL);
+        }
+        Arrays.sort(packed);
+
+        RigidBody order[] = new RigidBody[count];
+        for (int i = 0; i < count; i++)
+            order[i] = get((int) packed[i]);
+        m_store.reorder(order, count);
+    }
+
+    /**
+     * Splits the world into regions whose colliding pairs are resolved concurrently, to spread large
+     * worlds over several cores. A pair belongs to the region its dynamic bodies are in when the pair
+     * is resolved. Pairs whose bodies are in different regions cross a border, and are resolved by a
+     * serial seam pass once every region is done. Each region and the seam pass resolve their pairs
+     * ordered by body ids, so the result only depends on the region size and not on how the regions
+     * were scheduled, but it differs from resolving every pair in a single pass.
+     *
+     * @param width The width of the regions, or 0 to resolve every pair in a single serial pass.
+     * @param height The height of the regions, or 0 for vertical strips spanning the whole world.
+     */
+    public void setRegionSize(float width, float height) {
+        m_regionWidth = Math.max(width, 0);
+        m_regionHeight = Math.max(height, 0);
+    }
+
+    /**
+     * Returns the region a body is in, with its column in the high 32 bits and its row in the low.
+     */
+    private long regionOf(RigidBody body) {
+        int x = (int) Math.floor(body.getX() / m_regionWidth);
+        int y = m_regionHeight > 0 ? (int) Math.floor(body.getY() / m_regionHeight) : 0;
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private void resolvePairs(ContactPair pairs[], int from, int to) {
+        for (int i = from; i < to; i++)
+            m_solver.resolveCollision(pairs[i].manifold, pairs[i].a, pairs[i].b);
+    }
+
+    /**
+     * Resolves the colliding pairs of the step. Without regions they are resolved in a single pass
+     * ordered by body ids. With regions they are grouped by region, keeping that order within each
+     * region, the regions are resolved concurrently when there are enough pairs, and the pairs crossing
+     * region borders are resolved last on the calling thread.
+     */
+    private void resolveContacts() {
+        if (m_regionWidth <= 0) {
+            for (int i = 0; i < m_pairCount; i++) {
+                if (m_pairs[i].hit)
+                    m_solver.resolveCollision(m_pairs[i].manifold, m_pairs[i].a, m_pairs[i].b);
+            }
+            return;
+        }
+
+        if (m_regionPairs.length < m_pairCount)
+            m_regionPairs = new ContactPair[m_pairs.length];
+
+        int count = 0;
+        for (int i = 0; i < m_pairCount; i++) {
+            ContactPair pair = m_pairs[i];
+            if (!pair.hit)
+                continue;
+
+            if (pair.a.isStatic()) {
+                pair.region = regionOf(pair.b);
+                pair.seam = false;
+            } else if (pair.b.isStatic()) {
+                pair.region = regionOf(pair.a);
+                pair.seam = false;
+            } else {
+                pair.region = regionOf(pair.a);
+                pair.seam = pair.region != regionOf(pair.b);
+            }
+            m_regionPairs[count++] = pair;
+        }
+
+        // The sort is stable, so pairs stay ordered by body ids within a region
+        Arrays.sort(m_regionPairs, 0, count, RegionOrder);
+
+        int regions = 0;
+        int seamStart = count;
+        for (int i = 0; i < count; i++) {
+            ContactPair pair = m_regionPairs[i];
+            if (pair.seam) {
+                seamStart = i;
+                break;
+            }
+            if (i == 0 || pair.region != m_regionPairs[i - 1].region) {
+                if (regions + 1 >= m_regionStarts.length)
+                    m_regionStarts = Arrays.copyOf(m_regionStarts, Math.max(16, m_regionStarts.length * 2));
+                m_regionStarts[regions++] = i;
+            }
+        }
+        m_regionStarts[regions] = seamStart;
+        m_stats.regions = regions;
+        m_stats.seamPairs = count - seamStart;
+
+        if (regions > 1 && seamStart >= ParallelPairThreshold) {
+            ForkJoinPool.commonPool().invoke(new RegionTask(0, regions));
+        } else {
+            resolvePairs(m_regionPairs, 0, seamStart);
+        }
+        resolvePairs(m_regionPairs, seamStart, count);
+
+        // Release bodies so destroyed ones are not kept alive by the array
+        Arrays.fill(m_regionPairs, 0, count, null);
+    }
+
+    /**
+     * Sets whether resting bodies are put to sleep. Disallowing sleep wakes every body.
+     *
+     * @param allow true to let bodies sleep, false otherwise.
+     */
+    public void setAllowSleep(boolean allow) {
+        m_allowSleep = allow;
+        if (!allow) {
+            for (int i = 0; i < m_store.count; i++)
+                m_store.bodies[i].wake();
+        }
+    }
+
+    /**
+     * Sets how still, and for how long, bodies have to be before they are put to sleep.
+     *
+     * @param linear The distance per step a body has to move less than.
+     * @param angular The angular velocity a body has to turn slower than.
+     * @param steps The number of consecutive steps a body has to stay below both tolerances.
+     */
+    public void setSleepTolerances(float linear, float angular, int steps) {
+        m_linearSleepTolerance = linear;
+        m_angularSleepTolerance = angular;
+        m_stepsToSleep = steps;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArrayList<RigidBody>[] newIslandArray(int size) {
+        return (ArrayList<RigidBody>[]) new ArrayList[size];
+    }
+
+    private ContactPair queuePair(RigidBody a, RigidBody b, long key) {
+        if (m_pairCount == m_pairs.length) {
+            m_pairs = Arrays.copyOf(m_pairs, Math.max(16, m_pairCount * 2));
+            for (int i = m_pairCount; i < m_pairs.length; i++)
+                m_pairs[i] = new ContactPair();
+        }
+
+        ContactPair pair = m_pairs[m_pairCount++];
+        pair.a = a;
+        pair.b = b;
+        pair.key = key;
+        pair.grid = null;
+        return pair;
+    }
+
+    /**
+     * Returns the contact key of a body touching a tile. Tile keys have the sign bit set, so they never
+     * match a key between two bodies, and hold the body id, the grid and the tile's first cell.
+     * Cells are kept to 14 bits a coordinate.
+     */
+    private static long tileKey(int grid, int bodyId, int x, int y) {
+        return Long.MIN_VALUE | ((long) bodyId << 32) | ((long) grid << 28) | ((x & 0x3FFF) << 14) | (y & 0x3FFF);
+    }
+
+    /**
+     * Finds the cells of a grid that bounds overlaps, into m_cellX0 through m_cellY1, and the grid's origin into m_gridOrigin.
+     */
+    private void cellRange(TileGrid grid, AABB bounds) {
+        float size = grid.getTileSize();
+        grid.getOrigin(m_gridOrigin);
+        m_cellX0 = (int) Math.floor((bounds.bl.x - m_gridOrigin.x) / size);
+        m_cellX1 = (int) Math.floor((bounds.tr.x - m_gridOrigin.x) / size);
+        m_cellY0 = (int) Math.floor((bounds.tr.y - m_gridOrigin.y) / size);
+        m_cellY1 = (int) Math.floor((bounds.bl.y - m_gridOrigin.y) / size);
+    }
+
+    /**
+     * Queues a pair for every tile under an awake body, with the tile's box for the narrowphase.
+     * Tiles covering several cells are queued once.
+     */
+    private void queueTilePairs(RigidBody body) {
+        for (int g = 0; g < m_tileGrids.size(); g++) {
+            TileGrid grid = m_tileGrids.get(g);
+            RigidBody tileBody = m_tileBodies.get(g);
+            if (!canCollide(body, tileBody))
+                continue;
+
+            float size = grid.getTileSize();
+            cellRange(grid, body.getAABB());
+            int first = m_pairCount;
+            for (int y = m_cellY0; y <= m_cellY1; y++) {
+                for (int x = m_cellX0; x <= m_cellX1; x++) {
+                    if (!grid.findTile(x, y, m_tile))
+                        continue;
+
+                    long key = tileKey(g, body.id(), m_tile[0], m_tile[1]);
+                    boolean queued = false;
+                    for (int i = first; i < m_pairCount && !queued; i++)
+                        queued = m_pairs[i].key == key;
+                    if (queued)
+                        continue;
+
+                    m_stats.candidatePairs++;
+                    ContactPair pair = queuePair(body, tileBody, key);
+                    pair.grid = grid;
+                    pair.tileX = m_tile[0];
+                    pair.tileY = m_tile[1];
+                    pair.boxHalfWidth = m_tile[2] * size * 0.5f;
+                    pair.boxHalfHeight = m_tile[3] * size * 0.5f;
+                    pair.boxX = m_gridOrigin.x + m_tile[0] * size + pair.boxHalfWidth;
+                    pair.boxY = m_gridOrigin.y + m_tile[1] * size + pair.boxHalfHeight;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sweeps the bullet being swept against every tile of a grid under its motion.
+     */
+    private void sweepTiles(TileGrid grid) {
+        float size = grid.getTileSize();
+        cellRange(grid, m_sweepBounds);
+        for (int y = m_cellY0; y <= m_cellY1; y++) {
+            for (int x = m_cellX0; x <= m_cellX1; x++) {
+                if (!grid.findTile(x, y, m_tile))
+                    continue;
+
+                float hw = m_tile[2] * size * 0.5f, hh = m_tile[3] * size * 0.5f;
+                float toi = m_solver.sweepCircle(m_sweepX, m_sweepY, m_sweepDX, m_sweepDY, m_sweepRadius,
+                        m_gridOrigin.x + m_tile[0] * size + hw, m_gridOrigin.y + m_tile[1] * size + hh, hw, hh);
+                if (toi < m_sweepToi)
+                    m_sweepToi = toi;
+            }
+        }
+    }
+
+    /**
+     * Returns whether both sides of a contact are still in the world, the tile included for tile contacts.
+     */
+    private boolean isInWorld(CollisionEvent contact) {
+        if (get(contact.bodyA.id()) != contact.bodyA)
+            return false;
+        if (contact.key >= 0)
+            return get(contact.bodyB.id()) == contact.bodyB;
+
+        int g = (int) (contact.key >>> 28) & 0xF;
+        // Sign extend the 14 bit cell coordinates
+        int x = ((int) (contact.key >>> 14) & 0x3FFF) << 18 >> 18;
+        int y = ((int) contact.key & 0x3FFF) << 18 >> 18;
+        return g < m_tileGrids.size() && m_tileBodies.get(g) == contact.bodyB &&
+               m_tileGrids.get(g).findTile(x, y, m_tile) && m_tile[0] == x && m_tile[1] == y;
+    }
+
+    private static boolean canCollide(RigidBody a, RigidBody b) {
+        return (a.getCollMask() & b.getSelfMask()) != 0 && (b.getCollMask() & a.getSelfMask()) != 0;
+    }
+
+    /**
+     * Sweeps a bullet's circle from its last position to its current one through both broadphases,
+     * and moves it back to the first body it would touch, slightly inside so the contact is reported.
+     * Bullets that moved less than their radius this step cannot have skipped a body and are not swept.
+     */
+    private void sweep(RigidBody body) {
+        if (body.getFixture().getType() != Fixture.CIRCLE_FIXTURE)
+            return;
+
+        float radius = ((Circle) body.getFixture()).getRadius();
+        float x = body.getLastX(), y = body.getLastY();
+        float dx = body.getX() - x, dy = body.getY() - y;
+        if (dx * dx + dy * dy <= radius * radius)
+            return;
+
+        m_sweepBody = body;
+        m_sweepX = x;
+        m_sweepY = y;
+        m_sweepDX = dx;
+        m_sweepDY = dy;
+        m_sweepRadius = radius - SweepSlop;
+        m_sweepToi = Float.POSITIVE_INFINITY;
+
+        m_sweepBounds.bl.x = Math.min(x, x + dx) - radius;
+        m_sweepBounds.bl.y = Math.max(y, y + dy) + radius;
+        m_sweepBounds.tr.x = Math.max(x, x + dx) + radius;
+        m_sweepBounds.tr.y = Math.min(y, y + dy) - radius;
+        m_broadPhase.query(m_sweepBounds, m_sweepQuery);
+        m_staticBroadPhase.query(m_sweepBounds, m_sweepQuery);
+        for (int g = 0; g < m_tileGrids.size(); g++) {
+            if (canCollide(body, m_tileBodies.get(g)))
+                sweepTiles(m_tileGrids.get(g));
+        }
+        m_sweepBody = null;
+
+        if (m_sweepToi > 1)
+            return;
+
+        body.rewindTo(x + dx * m_sweepToi, y + dy * m_sweepToi);
+        m_broadPhase.update(body);
+    }
+
+    private static boolean isAwake(RigidBody body) {
+        return !body.isStatic() && !body.isSleeping();
+    }
+
+    private void addAwake(RigidBody body) {
+        if (m_awakeCount == m_awake.length) {
+            int size = Math.max(16, m_awakeCount * 2);
+            m_awake = Arrays.copyOf(m_awake, size);
+            m_islandParent = Arrays.copyOf(m_islandParent, size);
+            m_islandSteps = Arrays.copyOf(m_islandSteps, size);
+            m_islands = Arrays.copyOf(m_islands, size);
+        }
+
+        body.islandIndex = m_awakeCount;
+        m_islandParent[m_awakeCount] = m_awakeCount;
+        m_awake[m_awakeCount++] = body;
+    }
+
+    /**
+     * Moves the contacts of the last step ordered before key into the next step's contacts if they
+     * are between resting bodies, which are no longer tested but still touching, or ends them otherwise.
+     *
+     * @return The index of the first contact of the last step at or after key.
+     */
+    private int carryContacts(int from, long key) {
+        while (from < m_contacts.size() && m_contacts.get(from).key < key) {
+            CollisionEvent contact = m_contacts.get(from++);
+            boolean resting = !isAwake(contact.bodyA) && !isAwake(contact.bodyB);
+            if (resting && isInWorld(contact)) {
+                m_nextContacts.add(contact);
+            } else {
+                // A body resting against something that was removed has to fall or move on
+                if (resting) {
+                    contact.bodyA.wake();
+                    contact.bodyB.wake();
+                }
+                contact.type = CollisionEvent.END;
+                m_endEvents.add(contact);
+            }
+        }
+
+        return from;
+    }
+
+    /**
+     * Wakes a body that was touched this step, with the rest of its island, and adds it to the awake bodies
+     * unless it already is one. Bodies woken along with an island are only added once they are touched.
+     */
+    private void wakeForContact(RigidBody body) {
+        if (body.isStatic() || (body.islandIndex < m_awakeCount && m_awake[body.islandIndex] == body))
+            return;
+
+        body.wake();
+        addAwake(body);
+    }
+
+    private int findIsland(int i) {
+        while (m_islandParent[i] != i) {
+            // Path halving keeps the chains short
+            m_islandParent[i] = m_islandParent[m_islandParent[i]];
+            i = m_islandParent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Groups the awake bodies into islands of touching bodies, and puts every island whose bodies
+     * have all been resting for long enough to sleep. An island sleeps and wakes as a whole.
+     */
+    private void updateSleep() {
+        for (int i = 0; i < m_awakeCount; i++)
+            m_islandSteps[i] = m_awake[i].updateSleep(m_linearSleepTolerance, m_angularSleepTolerance);
+
+        for (int i = 0; i < m_pairCount; i++) {
+            ContactPair pair = m_pairs[i];
+            if (!pair.hit || pair.a.isStatic() || pair.b.isStatic())
+                continue;
+
+            int a = findIsland(pair.a.islandIndex);
+            int b = findIsland(pair.b.islandIndex);
+            if (a != b)
+                m_islandParent[a] = b;
+        }
+
+        // An island has rested for as long as its least rested body. Only roots are written,
+        // so every other entry still holds its own body's count
+        for (int i = 0; i < m_awakeCount; i++) {
+            int root = findIsland(i);
+            m_islandSteps[root] = Math.min(m_islandSteps[root], m_islandSteps[i]);
+        }
+
+        for (int i = 0; i < m_awakeCount; i++) {
+            int root = findIsland(i);
+            if (m_islandSteps[root] < m_stepsToSleep)
+                continue;
+
+            if (m_islands[root] == null)
+                m_islands[root] = new ArrayList<RigidBody>();
+            m_islands[root].add(m_awake[i]);
+        }
+
+        for (int i = 0; i < m_awakeCount; i++) {
+            ArrayList<RigidBody> island = m_islands[i];
+            if (island == null)
+                continue;
+
+            for (RigidBody body : island)
+                body.sleep(island);
+            m_islands[i] = null;
+        }
+
+        Arrays.fill(m_awake, 0, m_awakeCount, null);
+        m_awakeCount = 0;
+    }
+
+    /**
+     * Runs the narrowphase over the queued pairs in [from, to), storing a manifold for every pair that collides.
+     */
+    private void detectPairs(int from, int to) {
+        for (int i = from; i < to; i++) {
+            ContactPair pair = m_pairs[i];
+            if (pair.grid != null) {
+                pair.hit = m_solver.detectBox(pair.manifold, pair.a, pair.boxX, pair.boxY, pair.boxHalfWidth, pair.boxHalfHeight);
+                continue;
+            }
+
+            pair.hit = !(pair.a.isStatic() && pair.b.isStatic()) &&
+                       m_solver.detectCollision(pair.manifold, pair.a, pair.b);
+        }
+    }
+
+    /**
+     * Progresses the physics simulation by a time step (deltaTime), in phases:
+     * <ol>
+     * <li>Awake bodies are integrated together in the body store, and their broadphase entries updated.
+     * Static bodies are inserted into the static broadphase once, and are neither integrated nor updated
+     * afterwards. Sleeping bodies are skipped, unless they were moved from outside the world.</li>
+     * <li>Bullets are swept along their motion and stopped at the first body they would hit.</li>
+     * <li>Candidate pairs are collected, dynamic bodies with each other and then awake bodies with
+     * static bodies and with the tiles of every tile grid under them. Pairs without an awake body are dropped.</li>
+     * <li>The narrowphase tests every pair, split into fork/join tasks when there are many.</li>
+     * <li>Colliding pairs are resolved and reported ordered by body ids, so the result does not depend
+     * on the broadphase or on how the narrowphase was scheduled. Sleeping bodies that are hit are woken.
+     * With regions set, see {@link #setRegionSize(float, float)}, the pairs of each region are resolved
+     * concurrently, and pairs crossing region borders are resolved afterwards.</li>
+     * <li>Awake bodies are grouped into islands by their contacts, and islands that have rested for
+     * long enough are put to sleep.</li>
+     * <li>Contacts are matched with the last step's to report which began, stayed and ended. They are
+     * packed into the contact stream and passed to the handlers of their layers, then contact
+     * listeners are called.</li>
+     * </ol>
+     * Each phase is timed and counted by the world's {@link StepProfiler}, see {@link #getStepStats()}.
      *
      * @param deltaTime The time step for progressing the simulation.
      */
     public void progress(float deltaTime) {
         m_collisionEvents.clear();
-        m_quadTree.clear();
+        m_contactStream.clear();
+        m_beginEvents.clear();
+        m_endEvents.clear();
         m_manifolds.clear();
+        m_pairCount = 0;
+        m_profiler.begin();
 
         ArrayList<RigidBody> markedForDeletion = new ArrayList<>();
-        Set<Integer> keySet = m_bodies.keySet();
-        for (Integer key : keySet) {
-            RigidBody rA = m_bodies.get(key);
+        m_store.clearActive();
+        for (int i = 0; i < m_store.count; i++) {
+            RigidBody rA = m_store.bodies[i];
             if (rA.isMarkedForDeletion()) {
                 markedForDeletion.add(rA);
                 continue;
             }
 
-            rA.inegrate(deltaTime);
-            rA.setCollisionTested(false);
-            m_quadTree.add(rA);
+            if (rA.isStatic()) {
+                // Fixtures are attached after creation, so static bodies join their broadphase here
+                if (!rA.isInTree())
+                    m_staticBroadPhase.insert(rA);
+                continue;
+            }
+
+            if (rA.isSleeping()) {
+                if (!rA.movedWhileSleeping())
+                    continue;
+                rA.wake();
+            }
+
+            addAwake(rA);
+            m_store.active[rA.row] = 1;
         }
 
         for (RigidBody body : markedForDeletion)
             destroy(body);
 
-        for (Integer key : keySet) {
-            RigidBody rA = m_bodies.get(key);
-            rA.setCollisionTested(true);
+        m_store.integrate(deltaTime);
+        m_stats.bodiesIntegrated = m_awakeCount;
+        m_profiler.mark(StepProfiler.INTEGRATE);
 
-            List<TreeElement> intersecting = m_quadTree.intersecting(rA);
-            for (int i = 0; i < intersecting.size(); i++) {
-                RigidBody rB = (RigidBody) intersecting.get(i);
+        for (int i = 0; i < m_awakeCount; i++) {
+            RigidBody rA = m_awake[i];
+            // Only bodies that moved since the last step change the broadphase
+            m_broadPhase.update(rA);
 
-                if (rA == rB)
-                    continue;
+            if (rA.isBullet())
+                m_bullets.add(rA);
+        }
+        m_profiler.mark(StepProfiler.BROADPHASE_UPDATE);
 
-                if (rB.hasCollisionTested())
-                    continue;
+        for (int i = 0; i < m_bullets.size(); i++)
+            sweep(m_bullets.get(i));
+        m_stats.bulletsSwept = m_bullets.size();
+        m_bullets.clear();
+        m_profiler.mark(StepProfiler.SWEEP);
 
-                if (!((rA.getCollMask() & rB.getSelfMask()) != 0 && (rB.getCollMask() & rA.getSelfMask()) != 0)) {
-                    continue;
-                }
-                
-                CollisionSolver.CollisionManifold manifold = new CollisionSolver.CollisionManifold();
-                if (m_solver.resolveCollisionIIE(manifold, rA, rB)) {
-                    m_manifolds.add(manifold);
-
-                    CollisionEvent event = new CollisionEvent();
-                    event.bodyA = rA;
-                    event.bodyB = rB;
-                    m_collisionEvents.add(event);
+        m_broadPhase.pairs(m_pairSolver);
+        m_profiler.mark(StepProfiler.BROADPHASE_PAIRS);
+
+        for (int i = 0; i < m_awakeCount; i++) {
+            RigidBody rA = m_awake[i];
+            m_staticQueryBody = rA;
+            m_staticBroadPhase.query(m_staticQueryBounds.set(rA.getAABB()), m_staticQuery);
+            queueTilePairs(rA);
+        }
+        m_staticQueryBody = null;
+        m_profiler.mark(StepProfiler.STATIC_QUERIES);
+
+        if (m_pairCount < ParallelPairThreshold) {
+            detectPairs(0, m_pairCount);
+        } else {
+            ForkJoinPool.commonPool().invoke(new NarrowPhaseTask(0, m_pairCount));
+        }
+        m_stats.narrowphasePairs = m_pairCount;
+        m_profiler.mark(StepProfiler.NARROWPHASE);
+
+        Arrays.sort(m_pairs, 0, m_pairCount, PairOrder);
+        // Contacts of the last step are in the same order, so they are matched with a single merge
+        int last = 0;
+        for (int i = 0; i < m_pairCount; i++) {
+            ContactPair pair = m_pairs[i];
+            if (!pair.hit)
+                continue;
+
+            m_stats.narrowphaseHits++;
+            wakeForContact(pair.a);
+            wakeForContact(pair.b);
+
+            // Resolved by resolveContacts(), as manifolds only depend on the positions before any pair was resolved
+            m_manifolds.add(pair.manifold);
+
+            last = carryContacts(last, pair.key);
+            CollisionEvent event;
+            if (last < m_contacts.size() && m_contacts.get(last).key == pair.key) {
+                event = m_contacts.get(last++);
+                event.type = CollisionEvent.STAY;
+            } else {
+                event = new CollisionEvent();
+                event.key = pair.key;
+                event.type = CollisionEvent.BEGIN;
+                m_beginEvents.add(event);
+            }
+            event.bodyA = pair.a;
+            event.bodyB = pair.b;
+            event.tileData = pair.grid != null ? pair.grid.getUserData(pair.tileX, pair.tileY) : null;
+            m_nextContacts.add(event);
+            m_collisionEvents.add(event);
+        }
+        carryContacts(last, Long.MAX_VALUE);
+        resolveContacts();
+        m_stats.manifolds = m_manifolds.size();
+        m_stats.beginContacts = m_beginEvents.size();
+        m_stats.endContacts = m_endEvents.size();
+        m_profiler.mark(StepProfiler.SOLVE);
+
+        ArrayList<CollisionEvent> contacts = m_contacts;
+        m_contacts = m_nextContacts;
+        m_nextContacts = contacts;
+        m_nextContacts.clear();
+
+        if (m_allowSleep) {
+            updateSleep();
+        } else {
+            Arrays.fill(m_awake, 0, m_awakeCount, null);
+            m_awakeCount = 0;
+        }
+
+        // Release bodies so destroyed ones are not kept alive by the pool
+        for (int i = 0; i < m_pairCount; i++) {
+            m_pairs[i].a = m_pairs[i].b = null;
+            m_pairs[i].grid = null;
+        }
+        m_profiler.mark(StepProfiler.SLEEP);
+
+        for (int i = 0; i < m_endEvents.size(); i++)
+            m_contactStream.add(m_endEvents.get(i));
+        for (int i = 0; i < m_collisionEvents.size(); i++)
+            m_contactStream.add(m_collisionEvents.get(i));
+        dispatchContacts();
+
+        for (int i = 0; i < m_contactListeners.size(); i++) {
+            ContactListener listener = m_contactListeners.get(i);
+            for (int j = 0; j < m_endEvents.size(); j++)
+                listener.end(m_endEvents.get(j));
+            for (int j = 0; j < m_collisionEvents.size(); j++) {
+                CollisionEvent event = m_collisionEvents.get(j);
+                if (event.type == CollisionEvent.BEGIN) {
+                    listener.begin(event);
+                } else {
+                    listener.stay(event);
                 }
             }
         }
+
+        m_profiler.mark(StepProfiler.EVENTS);
+        m_profiler.end();
+    }
+
+    /**
+     * Calls the handler registered for the layers of every contact in the stream. The lookup only
+     * reads the packed category, so contacts without a handler never touch their bodies.
+     */
+    private void dispatchContacts() {
+        ContactStream contacts = m_contactStream;
+        for (int i = 0; i < contacts.size(); i++) {
+            int category = contacts.getCategory(i);
+            int index = (category & 0xFF) * LayerCount + ((category >>> 8) & 0xFF);
+            ContactHandler handler = m_contactHandlers[index];
+            if (handler != null)
+                handler.handle(contacts, i, m_contactHandlerFlipped[index]);
+        }
+    }
+
+    /**
+     * Returns the contact layer of a body with the given self mask: the index of the lowest bit set,
+     * or 32 for a body without any, matching how {@link LayeredBroadPhase} sorts bodies.
+     *
+     * @param selfMask The self mask of the body.
+     * @return The layer, between 0 and {@link #LayerCount} - 1.
+     */
+    public static int getLayer(int selfMask) {
+        return Integer.numberOfTrailingZeros(selfMask);
+    }
+
+    /**
+     * Registers the handler called for contacts between bodies on two layers, replacing any handler
+     * registered for them before. The handler is called whichever of the two bodies of a contact is
+     * on layerA, and is told when they are the other way around.
+     *
+     * @param layerA The first layer, see {@link #getLayer(int)}.
+     * @param layerB The second layer, may equal layerA.
+     * @param handler The handler, or null to remove the handler of the layers.
+     */
+    public void setContactHandler(int layerA, int layerB, ContactHandler handler) {
+        m_contactHandlers[layerA * LayerCount + layerB] = handler;
+        m_contactHandlerFlipped[layerA * LayerCount + layerB] = false;
+        if (layerA != layerB) {
+            m_contactHandlers[layerB * LayerCount + layerA] = handler;
+            m_contactHandlerFlipped[layerB * LayerCount + layerA] = true;
+        }
+    }
+
+    /**
+     * Retrieves the contacts of the current simulation step packed by layer, ended contacts first
+     * and then the current ones ordered by body ids.
+     *
+     * @return The contact stream.
+     */
+    public ContactStream getContactStream() {
+        return m_contactStream;
+    }
+
+    /**
+     * Retrieves the timings and counters of the current simulation step, which are only valid until
+     * the next step. See {@link #getProfiler()} for the timings of the last steps.
+     *
+     * @return The stats of the step.
+     */
+    public StepProfiler.Stats getStepStats() {
+        return m_stats;
+    }
+
+    /**
+     * Retrieves the profiler timing every step, which keeps histograms of the last steps' timings.
+     *
+     * @return The profiler.
+     */
+    public StepProfiler getProfiler() {
+        return m_profiler;
     }
 
     /**
      * Retrieves a list of collision events that have occurred during the current simulation step.
+     * This holds every contact that began or stayed, see {@link CollisionEvent#type}.
      *
      * @return A list of CollisionEvent objects.
      */
@@ -156,28 +1377,272 @@ public class PhysicsWorld {
     }
 
     /**
-     * Retrieves the QuadTree used for spatial partitioning in the physics world.
+     * Retrieves the contacts that began during the current simulation step.
      *
-     * @return The QuadTree object.
+     * @return A list of CollisionEvent objects.
+     */
+    public ArrayList<CollisionEvent> getBeginEvents() {
+        return m_beginEvents;
+    }
+
+    /**
+     * Retrieves the contacts that ended during the current simulation step.
+     *
+     * @return A list of CollisionEvent objects.
+     */
+    public ArrayList<CollisionEvent> getEndEvents() {
+        return m_endEvents;
+    }
+
+    /**
+     * Subscribes a listener to the contacts of every step. Listeners are called at the end of
+     * {@link #progress(float)}, with ended contacts first and then the current ones ordered by body ids.
+     *
+     * @param listener The listener to add.
+     */
+    public void addContactListener(ContactListener listener) {
+        m_contactListeners.add(listener);
+    }
+
+    /**
+     * Unsubscribes a listener added with {@link #addContactListener(ContactListener)}.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeContactListener(ContactListener listener) {
+        m_contactListeners.remove(listener);
+    }
+
+    /**
+     * Retrieves the broadphase holding the dynamic bodies of the physics world.
+     *
+     * @return The BroadPhase object.
      */
-    public QuadTree getTree() {
-        return m_quadTree;
+    public BroadPhase getBroadPhase() {
+        return m_broadPhase;
     }
 
     /**
-     * Draws the physics world, including the QuadTree and all rigid bodies, on the provided Graphics2D object.
+     * Retrieves the broadphase holding the static bodies of the physics world.
+     *
+     * @return The static BroadPhase object.
+     */
+    public BroadPhase getStaticBroadPhase() {
+        return m_staticBroadPhase;
+    }
+
+    /**
+     * Reports every body whose self mask shares a bit with mask and whose AABB overlaps aabb, static
+     * bodies included. Bodies join the broadphase on the step after they are created, so they are
+     * found from then on. The tiles of the grids added by {@link #addTileGrid(TileGrid)} are reported
+     * once each, with the body of their grid, when its self mask shares a bit with mask. The callback
+     * must not create or destroy bodies or tiles, nor start another query on this world.
+     *
+     * @param aabb The AABB to query.
+     * @param mask The self mask bits a body needs one of to be reported.
+     * @param callback The callback to report bodies to.
+     */
+    public void queryAABB(AABB aabb, int mask, BodyCallback callback) {
+        m_shapeBounds.set(aabb);
+        query(mask, -1, callback);
+    }
+
+    /**
+     * Reports every body whose self mask shares a bit with mask and whose fixture overlaps the circle
+     * of radius r around center, and every tile overlapping it, with the same rules as
+     * {@link #queryAABB(AABB, int, BodyCallback)}.
+     *
+     * @param center The center of the circle.
+     * @param r The radius of the circle.
+     * @param mask The self mask bits a body needs one of to be reported.
+     * @param callback The callback to report bodies to.
+     */
+    public void queryRadius(Vec2D center, float r, int mask, BodyCallback callback) {
+        m_shapeX = center.x;
+        m_shapeY = center.y;
+        m_shapeBounds.bl.x = center.x - r;
+        m_shapeBounds.bl.y = center.y + r;
+        m_shapeBounds.tr.x = center.x + r;
+        m_shapeBounds.tr.y = center.y - r;
+        query(mask, r, callback);
+    }
+
+    /**
+     * Reports every body whose self mask shares a bit with mask and whose fixture contains point, and
+     * every tile containing it, with the same rules as {@link #queryAABB(AABB, int, BodyCallback)}.
+     *
+     * @param point The point to test.
+     * @param mask The self mask bits a body needs one of to be reported.
+     * @param callback The callback to report bodies to.
+     */
+    public void pointQuery(Vec2D point, int mask, BodyCallback callback) {
+        queryRadius(point, 0, mask, callback);
+    }
+
+    private void query(int mask, float radius, BodyCallback callback) {
+        m_shapeMask = mask;
+        m_shapeRadius = radius;
+        m_shapeCallback = callback;
+        m_broadPhase.query(m_shapeBounds, m_shapeQuery);
+        m_staticBroadPhase.query(m_shapeBounds, m_shapeQuery);
+        for (int g = 0; g < m_tileGrids.size(); g++) {
+            if ((m_tileBodies.get(g).getSelfMask() & mask) != 0)
+                queryTiles(g);
+        }
+        m_shapeCallback = null;
+    }
+
+    /**
+     * Reports the tiles of a grid overlapping the shape being queried by query(). Tiles covering
+     * several cells are reported from the first of their cells under the shape, so only once.
+     */
+    private void queryTiles(int g) {
+        TileGrid grid = m_tileGrids.get(g);
+        RigidBody tileBody = m_tileBodies.get(g);
+        float size = grid.getTileSize();
+        cellRange(grid, m_shapeBounds);
+        for (int y = m_cellY0; y <= m_cellY1; y++) {
+            for (int x = m_cellX0; x <= m_cellX1; x++) {
+                if (!grid.findTile(x, y, m_tile))
+                    continue;
+                if (x != Math.max(m_tile[0], m_cellX0) || y != Math.max(m_tile[1], m_cellY0))
+                    continue;
+
+                float hw = m_tile[2] * size * 0.5f, hh = m_tile[3] * size * 0.5f;
+                if (m_shapeRadius >= 0 && !m_solver.overlapCircle(m_shapeX, m_shapeY, m_shapeRadius,
+                        m_gridOrigin.x + m_tile[0] * size + hw, m_gridOrigin.y + m_tile[1] * size + hh, hw, hh))
+                    continue;
+
+                m_shapeCallback.report(tileBody, grid.getUserData(m_tile[0], m_tile[1]));
+            }
+        }
+    }
+
+    /**
+     * Casts a ray and finds the closest body whose self mask shares a bit with mask, static bodies
+     * and the tiles of the grids added by {@link #addTileGrid(TileGrid)} included. Tiles are hit when
+     * the self mask of their grid's body shares a bit with mask. Bodies and tiles containing the
+     * origin are not hit.
+     *
+     * @param origin The point the ray starts at.
+     * @param dir The direction of the ray, it does not need to be normalized.
+     * @param maxDist The distance past which bodies are not hit.
+     * @param mask The self mask bits a body needs one of to be hit.
+     * @param out The hit to write into, left untouched if nothing is hit.
+     * @return true if a body or tile was hit, false otherwise.
+     */
+    public boolean raycast(Vec2D origin, Vec2D dir, float maxDist, int mask, RaycastHit out) {
+        float length = (float) Math.sqrt(dir.x * dir.x + dir.y * dir.y);
+        if (length == 0 || maxDist <= 0)
+            return false;
+
+        float x = origin.x, y = origin.y;
+        float dx = dir.x / length * maxDist, dy = dir.y / length * maxDist;
+        m_rayX = x;
+        m_rayY = y;
+        m_rayDX = dx;
+        m_rayDY = dy;
+        m_rayMask = mask;
+        m_rayToi = Float.POSITIVE_INFINITY;
+
+        m_shapeBounds.bl.x = Math.min(x, x + dx);
+        m_shapeBounds.bl.y = Math.max(y, y + dy);
+        m_shapeBounds.tr.x = Math.max(x, x + dx);
+        m_shapeBounds.tr.y = Math.min(y, y + dy);
+        m_broadPhase.query(m_shapeBounds, m_rayQuery);
+        m_staticBroadPhase.query(m_shapeBounds, m_rayQuery);
+        for (int g = 0; g < m_tileGrids.size(); g++) {
+            if ((m_tileBodies.get(g).getSelfMask() & mask) != 0)
+                raycastTiles(g);
+        }
+
+        RigidBody body = m_rayBody;
+        TileGrid grid = m_rayGrid;
+        m_rayBody = null;
+        m_rayGrid = null;
+        if (body == null)
+            return false;
+
+        out.body = body;
+        out.userData = grid != null ? grid.getUserData(m_rayTileX, m_rayTileY) : body.getUserData();
+        out.distance = m_rayToi * maxDist;
+        out.x = x + dx * m_rayToi;
+        out.y = y + dy * m_rayToi;
+        return true;
+    }
+
+    /**
+     * Walks the ray being cast through the cells of a grid in the order it crosses them, testing the
+     * tile of every solid cell, until the cells left are past the end of the ray or the closest hit.
+     */
+    private void raycastTiles(int g) {
+        TileGrid grid = m_tileGrids.get(g);
+        float size = grid.getTileSize();
+        grid.getOrigin(m_gridOrigin);
+
+        // The ray in cell units, relative to the grid
+        float lx = (m_rayX - m_gridOrigin.x) / size, ly = (m_rayY - m_gridOrigin.y) / size;
+        float ldx = m_rayDX / size, ldy = m_rayDY / size;
+        int x = (int) Math.floor(lx), y = (int) Math.floor(ly);
+        int stepX = ldx > 0 ? 1 : -1, stepY = ldy > 0 ? 1 : -1;
+        // The fraction of the ray it takes to cross a cell, and at which the next cell border is crossed
+        float deltaX = ldx == 0 ? Float.POSITIVE_INFINITY : Math.abs(1 / ldx);
+        float deltaY = ldy == 0 ? Float.POSITIVE_INFINITY : Math.abs(1 / ldy);
+        float nextX = ldx == 0 ? Float.POSITIVE_INFINITY : (ldx > 0 ? x + 1 - lx : lx - x) * deltaX;
+        float nextY = ldy == 0 ? Float.POSITIVE_INFINITY : (ldy > 0 ? y + 1 - ly : ly - y) * deltaY;
+
+        float t = 0;
+        while (t <= 1 && t < m_rayToi) {
+            if (grid.findTile(x, y, m_tile)) {
+                float hw = m_tile[2] * size * 0.5f, hh = m_tile[3] * size * 0.5f;
+                float toi = m_solver.sweepCircle(m_rayX, m_rayY, m_rayDX, m_rayDY, 0,
+                        m_gridOrigin.x + m_tile[0] * size + hw, m_gridOrigin.y + m_tile[1] * size + hh, hw, hh);
+                if (toi < m_rayToi) {
+                    m_rayToi = toi;
+                    m_rayBody = m_tileBodies.get(g);
+                    m_rayGrid = grid;
+                    m_rayTileX = m_tile[0];
+                    m_rayTileY = m_tile[1];
+                }
+            }
+
+            if (nextX < nextY) {
+                t = nextX;
+                nextX += deltaX;
+                x += stepX;
+            } else {
+                t = nextY;
+                nextY += deltaY;
+                y += stepY;
+            }
+        }
+    }
+
+    /**
+     * Casts a ray, see {@link #raycast(Vec2D, Vec2D, float, int, RaycastHit)}.
+     *
+     * @param origin The point the ray starts at.
+     * @param dir The direction of the ray, it does not need to be normalized.
+     * @param maxDist The distance past which bodies are not hit.
+     * @param mask The self mask bits a body needs one of to be hit.
+     * @return A new hit for the closest body or tile, or null if nothing is hit.
+     */
+    public RaycastHit raycast(Vec2D origin, Vec2D dir, float maxDist, int mask) {
+        RaycastHit hit = new RaycastHit();
+        return raycast(origin, dir, maxDist, mask, hit) ? hit : null;
+    }
+
+    /**
+     * Draws the physics world, including the broadphase and all rigid bodies, on the provided Graphics2D object.
      *
      * @param gfx The Graphics2D object to draw on.
      */
     public void draw(Graphics2D gfx) {
-        m_quadTree.draw(gfx);
+        m_broadPhase.draw(gfx);
+        m_staticBroadPhase.draw(gfx);
 
         gfx.setColor(Color.YELLOW);
-        Set<Integer> keySet = m_bodies.keySet();
-        for (Integer key : keySet) {
-            RigidBody rA = m_bodies.get(key);
-
-            rA.draw(gfx);
-        }
+        for (int i = 0; i < m_store.count; i++)
+            m_store.bodies[i].draw(gfx);
     }
 }
\ No newline at end of file
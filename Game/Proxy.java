@@ -0,0 +1,47 @@
+package Game;
+
+/**
+ * The handle a broadphase keeps on an element it stores. Every broadphase extends it with the state
+ * it needs about its elements, so elements carry nothing for broadphases they are not in.
+ * An element chains the proxies of every broadphase it is in, usually one, or two when a broadphase
+ * such as {@link LayeredBroadPhase} stores it in a broadphase of its own.
+ */
+abstract class Proxy {
+	// The broadphase the proxy belongs to
+	final BroadPhase owner;
+	// The element the proxy stands for
+	final TreeElement element;
+	// Index of the proxy in its broadphase, such as a list index, slot or leaf, -1 when unused
+	int index = -1;
+	// Next proxy of the same element
+	Proxy next;
+
+	/**
+	 * Creates a proxy and adds it to the element's chain.
+	 *
+	 * @param owner The broadphase the proxy belongs to.
+	 * @param element The element the proxy stands for.
+	 */
+	Proxy(BroadPhase owner, TreeElement element) {
+		this.owner = owner;
+		this.element = element;
+		next = element.proxies;
+		element.proxies = this;
+	}
+
+	/**
+	 * Removes the proxy from its element's chain, once the element has left the broadphase.
+	 */
+	void unlink() {
+		if(element.proxies == this) {
+			element.proxies = next;
+		} else {
+			Proxy p = element.proxies;
+			while(p != null && p.next != this)
+				p = p.next;
+			if(p != null)
+				p.next = next;
+		}
+		next = null;
+	}
+}
@@ -0,0 +1,67 @@
+package Game;
+
+import java.util.ArrayList;
+
+/**
+ * A dense list of the proxies stored in a broadphase. Each proxy remembers its index,
+ * so it can be removed in constant time by swapping the last proxy into its place.
+ * The index also gives the elements an order, which broadphases use to report each pair once.
+ *
+ * @param <T> The proxy type of the broadphase.
+ */
+class ProxyList<T extends Proxy> {
+	private ArrayList<T> m_proxies = new ArrayList<T>();
+	
+	/**
+	 * Appends a proxy to the list.
+	 * 
+	 * @param p The proxy to add.
+	 */
+	void add(T p) {
+		p.index = m_proxies.size();
+		m_proxies.add(p);
+	}
+	
+	/**
+	 * Removes a proxy by swapping the last proxy into its place.
+	 * 
+	 * @param p The proxy to remove.
+	 */
+	void remove(T p) {
+		int index = p.index;
+		if(index < 0 || index >= m_proxies.size() || m_proxies.get(index) != p)
+			return;
+		
+		T last = m_proxies.remove(m_proxies.size() - 1);
+		if(last != p) {
+			m_proxies.set(index, last);
+			last.index = index;
+		}
+		p.index = -1;
+	}
+	
+	/**
+	 * @param index The index of the proxy.
+	 * @return The proxy at index. */
+	T get(int index) {
+		return m_proxies.get(index);
+	}
+	
+	/**
+	 * @return The number of proxies in the list. */
+	int size() {
+		return m_proxies.size();
+	}
+	
+	/**
+	 * Removes all proxies from the list, and unlinks them from their elements.
+	 */
+	void clear() {
+		for(int i = 0; i < m_proxies.size(); i++) {
+			T p = m_proxies.get(i);
+			p.index = -1;
+			p.unlink();
+		}
+		m_proxies.clear();
+	}
+}
@@ -6,219 +6,475 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * QuadTree is a spatial data structure that divides the 2D space into quadrants (nodes) 
+ * QuadTree is a spatial data structure that divides the 2D space into quadrants (nodes)
  * to efficiently store and query objects with axis-aligned bounding boxes (AABBs).
  * It is useful for scenarios where you need to manage a large number of objects
  * and perform fast intersection queries.
+ * <p>
+ * The tree is loose: every node owns a square cell, but the elements stored in it may reach
+ * out up to half a cell past each of its sides. An element is stored in the deepest node whose
+ * cell contains its center and whose size is at least the element's, so every element is stored
+ * in exactly one node and never duplicated across siblings. The root is not fixed either, it is
+ * recentered on the first element inserted into an empty tree, grows outwards to fit elements
+ * that fall outside of it, and shrinks back down when its elements all end up in one quadrant.
  */
-public class QuadTree {
+public class QuadTree implements BroadPhase {
 	private static final int MaxElementsInNodes = 6;
-	private static final int MaxLevels = 8;	
-	
-	private TreeNode root;
-	
-	private class TreeNode {
-		int level;
-		AABB aabb;
-		List<TreeElement> contains;
-		TreeNode[] children;
-	
-		TreeNode(int level, int x, int y, int w, int h) {
-			this(level, new AABB(x, y, w, h));
-		}
-		
-		TreeNode(int level, AABB aabb) {
-			this.aabb = aabb;
-			this.level = level;
-			
-			contains = new ArrayList<TreeElement>();
-			children = new TreeNode[4];
-		}
-		
-		public void clear() {
-			contains = new ArrayList<TreeElement>();
-			children = new TreeNode[4];
-		}
-		
-		public void draw(Graphics2D gfx) {
-			gfx.setColor(Color.RED);
-			if(contains != null) {
-				gfx.drawString("" + contains.size(), aabb.bl.x, aabb.tr.y);
-				
-				for(int i = 0; i < contains.size(); i++) {
-					contains.get(i).getAABB().draw(gfx);
-				}
+	// Cells are not split below this half size
+	private static final float MinHalfSize = 4.0f;
+	// The root stops growing past this half size, elements that still do not fit are kept in it
+	private static final float MaxHalfSize = 1.0e30f;
+
+	private Node root;
+	private float m_initialHalfSize;
+	private ArrayList<Handle> m_queryResults = new ArrayList<Handle>();
+	private ProxyList<Handle> m_proxies = new ProxyList<Handle>();
+
+	/**
+	 * The proxy of an element: the bounds it was stored with, and the node it is stored in.
+	 */
+	private static class Handle extends Proxy {
+		AABB bounds;
+		Node node;
+		// Index of the handle among its node's elements
+		int nodeIndex = -1;
+
+		Handle(QuadTree owner, TreeElement e) {
+			super(owner, e);
+		}
+	}
+
+	/**
+	 * A node of the tree. Its cell is the square centered on (cx, cy) extending half in every
+	 * direction, and its loose bounds extend twice as far.
+	 */
+	private static class Node {
+		float cx, cy, half;
+		Node parent;
+		// Index of this node in its parent's children
+		int quadrant;
+		// Null until the node has been split
+		Node children[];
+		ArrayList<Handle> contains = new ArrayList<Handle>();
+		// Number of elements in this node and all of its descendants
+		int count;
+
+		Node(float cx, float cy, float half) {
+			this.cx = cx;
+			this.cy = cy;
+			this.half = half;
+		}
+
+		/**
+		 * @return Does the loose bounds of this node overlap b? */
+		boolean looseIntersects(AABB b) {
+			float loose = half * 2;
+			return cx - loose <= b.tr.x && cx + loose >= b.bl.x &&
+				   cy - loose <= b.bl.y && cy + loose >= b.tr.y;
+		}
+
+		/**
+		 * @return Can an element centered on (x, y) with the given half extent be stored in this node? */
+		boolean fits(float x, float y, float extent) {
+			return Math.abs(x - cx) <= half && Math.abs(y - cy) <= half && extent <= half;
+		}
+
+		/**
+		 * @return The quadrant of this node whose cell contains (x, y). */
+		int quadrantOf(float x, float y) {
+			return (x >= cx ? 1 : 0) | (y >= cy ? 2 : 0);
+		}
+
+		/**
+		 * Returns a child, creating it if needed.
+		 *
+		 * @param q The quadrant of the child.
+		 * @return The child. */
+		Node child(int q) {
+			Node c = children[q];
+			if(c == null) {
+				float h = half / 2;
+				c = new Node(cx + ((q & 1) != 0 ? h : -h), cy + ((q & 2) != 0 ? h : -h), h);
+				c.parent = this;
+				c.quadrant = q;
+				children[q] = c;
 			}
-			
-			gfx.setColor(Color.BLUE);
-			aabb.draw(gfx);
-			
+
+			return c;
+		}
+
+		boolean canSplit() {
+			return half / 2 >= MinHalfSize;
+		}
+	}
+
+	/**
+	 * Constructs a QuadTree whose root initially covers a given area. The root moves and grows to
+	 * fit the elements inserted into it, so the area is only a hint of the expected world size.
+	 *
+	 * @param w The width of the area to be managed by the QuadTree.
+	 * @param h The height of the area to be managed by the QuadTree.
+	 */
+	public QuadTree(int w, int h) {
+		m_initialHalfSize = Math.max(Math.max(w, h) / 2.0f, MinHalfSize);
+		root = new Node(w / 2.0f, h / 2.0f, m_initialHalfSize);
+	}
+
+	private static float centerX(AABB b) {
+		return (b.bl.x + b.tr.x) / 2;
+	}
+
+	private static float centerY(AABB b) {
+		return (b.bl.y + b.tr.y) / 2;
+	}
+
+	private static float extent(AABB b) {
+		return Math.max(b.tr.x - b.bl.x, b.bl.y - b.tr.y) / 2;
+	}
+
+	/**
+	 * Doubles the root until it fits an element centered on (x, y) with the given half extent,
+	 * growing towards the element so the old root becomes one of the new root's quadrants.
+	 */
+	private void grow(float x, float y, float extent) {
+		if(!Float.isFinite(x) || !Float.isFinite(y) || !Float.isFinite(extent))
+			return;
+
+		while(!root.fits(x, y, extent) && root.half < MaxHalfSize) {
+			float h = root.half;
+			int q = (x < root.cx ? 1 : 0) | (y < root.cy ? 2 : 0);
+			Node grown = new Node(root.cx + ((q & 1) != 0 ? -h : h), root.cy + ((q & 2) != 0 ? -h : h), h * 2);
+			grown.children = new Node[4];
+			grown.children[q] = root;
+			grown.count = root.count;
+			root.parent = grown;
+			root.quadrant = q;
+			root = grown;
+		}
+	}
+
+	/**
+	 * Drops the root while it holds no elements of its own and only one of its quadrants is in use.
+	 */
+	private void shrink() {
+		while(root.contains.isEmpty() && root.children != null) {
+			Node only = null;
 			for(int i = 0; i < 4; i++) {
-				if(children[i] == null)
+				Node c = root.children[i];
+				if(c == null)
 					continue;
-				
-				children[i].draw(gfx);
+				if(only != null)
+					return;
+				only = c;
 			}
-		}
-		
-		public void add(TreeElement ele) {
-			if(contains == null) {
-				insertInLeafNodes(ele);
-			} else if(contains.size() + 1 > MaxElementsInNodes && 
-			   level + 1 <= MaxLevels) {
-				insertInLeafNodes(ele);
-
-				for(int i = 0; i < contains.size(); i ++) {
-					insertInLeafNodes(contains.get(i));
-				}
-				
-				contains = null;
-			} else {
-				contains.add(ele);				
+
+			if(only == null) {
+				root.children = null;
+				return;
 			}
+
+			only.parent = null;
+			root = only;
 		}
-		
-		public void remove(TreeElement ele) {
-			if(contains == null) {
-				eraseInLeafNodes(ele);
-			} else {
-				contains.remove(ele);
-			}
-		
-		}
-		
-		public void getIntersecting(List<TreeElement> intersecting, TreeElement e) {
-			if(contains != null) {
-				for(int i = 0; i < contains.size(); i++) {
-					TreeElement other = contains.get(i);
-					
-					if(!other.hasQueried() && 
-						other.getAABB().intersects(e.getAABB())) {
-						other.setQueriedStatus(true);
-						intersecting.add(other);
-					}
-				}
-				
-				return;
+	}
+
+	/**
+	 * Finds the deepest node below from that an element with the given bounds can be stored in,
+	 * creating nodes along the way. from must fit the element, or be the root. */
+	private Node descend(Node from, AABB bounds) {
+		float x = centerX(bounds), y = centerY(bounds), extent = extent(bounds);
+
+		Node node = from;
+		while(node.children != null && node.fits(x, y, extent) && extent <= node.half / 2 && node.canSplit())
+			node = node.child(node.quadrantOf(x, y));
+
+		return node;
+	}
+
+	/**
+	 * Stores an element in a node, and splits the node if it now holds too many elements.
+	 */
+	private void link(Handle e, Node node) {
+		e.node = node;
+		e.nodeIndex = node.contains.size();
+		node.contains.add(e);
+		for(Node n = node; n != null; n = n.parent)
+			n.count++;
+
+		if(node.children == null && node.contains.size() > MaxElementsInNodes && node.canSplit())
+			split(node);
+	}
+
+	/**
+	 * Removes an element from the node it is stored in, without cleaning up the tree.
+	 */
+	private void unlink(Handle e) {
+		Node node = e.node;
+		ArrayList<Handle> contains = node.contains;
+		Handle last = contains.remove(contains.size() - 1);
+		if(last != e) {
+			contains.set(e.nodeIndex, last);
+			last.nodeIndex = e.nodeIndex;
+		}
+		for(Node n = node; n != null; n = n.parent)
+			n.count--;
+
+		e.node = null;
+		e.nodeIndex = -1;
+	}
+
+	/**
+	 * Pushes the elements of a node that are small enough down into its quadrants.
+	 */
+	private void split(Node node) {
+		node.children = new Node[4];
+
+		ArrayList<Handle> elements = new ArrayList<Handle>(node.contains);
+		for(int i = 0; i < elements.size(); i++) {
+			Handle e = elements.get(i);
+			Node target = descend(node, e.bounds);
+			if(target != node) {
+				unlink(e);
+				link(e, target);
 			}
-			
-			for(int i = 0; i < 4; i++) {
-				if(children[i] == null || 
-				   !e.getAABB().intersects(getChildAABB(i)))
-					continue;
+		}
+	}
 
-				children[i].getIntersecting(intersecting, e);					
+	/**
+	 * Cleans up after an element was unlinked from node: drops emptied nodes, collapses the
+	 * highest ancestor left with few enough elements back into a single node, and shrinks the root.
+	 */
+	private void prune(Node node) {
+		Node collapse = null;
+		for(Node n = node; n != null; n = n.parent) {
+			if(n.count == 0 && n.parent != null)
+				n.parent.children[n.quadrant] = null;
+			else if(n.children != null && n.count <= MaxElementsInNodes)
+				collapse = n;
+		}
+
+		if(collapse != null) {
+			for(int i = 0; i < 4; i++) {
+				if(collapse.children[i] != null)
+					gather(collapse.children[i], collapse);
 			}
+			collapse.children = null;
+		}
+
+		shrink();
+	}
+
+	/**
+	 * Moves every element of a subtree into the given node.
+	 */
+	private void gather(Node from, Node into) {
+		for(int i = 0; i < from.contains.size(); i++) {
+			Handle e = from.contains.get(i);
+			e.node = into;
+			e.nodeIndex = into.contains.size();
+			into.contains.add(e);
 		}
-		
-		private void insertInLeafNodes(TreeElement e) {
+
+		if(from.children != null) {
 			for(int i = 0; i < 4; i++) {
-				AABB childAABB = getChildAABB(i);
-				
-				if(!e.getAABB().intersects(childAABB))
-					continue;
-				if(children[i] == null)
-					children[i] = new TreeNode(level + 1, childAABB);
-				
-				children[i].add(e);
+				if(from.children[i] != null)
+					gather(from.children[i], into);
 			}
 		}
-		
-		private void eraseInLeafNodes(TreeElement e) {
+	}
+
+	/**
+	 * Finds all elements that intersect with a given element.
+	 *
+	 * @param e The element for which to find intersecting elements.
+	 * @return A list of TreeElement objects that intersect with the given element.
+	 */
+	public List<TreeElement> intersecting(TreeElement e) {
+		List<Handle> found = new ArrayList<Handle>();
+		collect(root, found, e.getAABB());
+
+		List<TreeElement> arr = new ArrayList<TreeElement>();
+		for(int i = 0; i < found.size(); i++)
+			arr.add(found.get(i).element);
+		return arr;
+	}
+
+	/**
+	 * Collects every element below node overlapping bounds into arr. The elements of the root are
+	 * always tested, since elements too far out to grow the root to are kept there.
+	 */
+	private void collect(Node node, List<Handle> arr, AABB bounds) {
+		if(node != root && !node.looseIntersects(bounds))
+			return;
+
+		for(int i = 0; i < node.contains.size(); i++) {
+			Handle other = node.contains.get(i);
+			if(other.element.getAABB().intersects(bounds))
+				arr.add(other);
+		}
+
+		if(node.children != null) {
 			for(int i = 0; i < 4; i++) {
-				AABB childAABB = getChildAABB(i);
-				
-				if(!e.getAABB().intersects(childAABB))
-					continue;
-				if(children[i] == null)
-					continue;
-				
-				children[i].remove(e);
+				if(node.children[i] != null)
+					collect(node.children[i], arr, bounds);
+			}
+		}
+	}
+
+	/**
+	 * Adds an element to the QuadTree, growing the root if the element falls outside of it.
+	 *
+	 * @param e The element to be added to the QuadTree.
+	 */
+	@Override
+	public void insert(TreeElement element) {
+		AABB bounds = element.getAABB();
+		Handle e = new Handle(this, element);
+		e.bounds = bounds.clone();
+		m_proxies.add(e);
+
+		if(root.count == 0) {
+			float x = centerX(bounds), y = centerY(bounds);
+			if(Float.isFinite(x) && Float.isFinite(y))
+				root = new Node(x, y, m_initialHalfSize);
+		}
+
+		grow(centerX(bounds), centerY(bounds), extent(bounds));
+		link(e, descend(root, bounds));
+	}
+
+	/**
+	 * Removes an element from the QuadTree, collapsing any nodes that are left empty.
+	 *
+	 * @param e The element to be removed from the QuadTree.
+	 */
+	@Override
+	public void remove(TreeElement element) {
+		Handle e = (Handle)element.getProxy(this);
+		if(e == null)
+			return;
+
+		Node node = e.node;
+		unlink(e);
+		prune(node);
+		m_proxies.remove(e);
+		e.unlink();
+	}
+
+	/**
+	 * Moves an element to match its current AABB. The element is only moved if it no longer
+	 * belongs in the node it is stored in, in which case the search for its new node starts from
+	 * the nearest ancestor it still fits, so the cost is proportional to how far the element moved
+	 * rather than to the size of the tree. Elements not yet in the tree are added.
+	 *
+	 * @param e The element to update.
+	 */
+	@Override
+	public void update(TreeElement element) {
+		Handle e = (Handle)element.getProxy(this);
+		if(e == null) {
+			insert(element);
+			return;
+		}
+
+		AABB bounds = element.getAABB();
+		if(bounds.equals(e.bounds))
+			return;
+		e.bounds.set(bounds);
+
+		float x = centerX(bounds), y = centerY(bounds), extent = extent(bounds);
+		Node from = e.node;
+		while(from != null && !from.fits(x, y, extent))
+			from = from.parent;
+
+		if(from == null) {
+			grow(x, y, extent);
+			from = root;
+		}
+
+		Node target = descend(from, bounds);
+		Node old = e.node;
+		if(target == old)
+			return;
+
+		unlink(e);
+		link(e, target);
+		prune(old);
+	}
+
+	/**
+	 * Reports every element overlapping bounds.
+	 *
+	 * @param bounds The AABB to query.
+	 * @param callback The callback to report elements to.
+	 */
+	@Override
+	public void query(AABB bounds, QueryCallback callback) {
+		m_queryResults.clear();
+		collect(root, m_queryResults, bounds);
+		for(int i = 0; i < m_queryResults.size(); i++) {
+			callback.report(m_queryResults.get(i).element);
+		}
+	}
+
+	/**
+	 * Reports every pair of overlapping elements, by querying each element's AABB and
+	 * only reporting partners that come later in insertion order.
+	 *
+	 * @param callback The callback to report pairs to.
+	 */
+	@Override
+	public void pairs(PairCallback callback) {
+		for(int i = 0; i < m_proxies.size(); i++) {
+			TreeElement a = m_proxies.get(i).element;
+
+			m_queryResults.clear();
+			collect(root, m_queryResults, a.getAABB());
+			for(int j = 0; j < m_queryResults.size(); j++) {
+				Handle b = m_queryResults.get(j);
+				if(b.index > i)
+					callback.pair(a, b.element);
 			}
 		}
-		
-		
-		private AABB getChildAABB(int nodeIndex) {
-			float x = aabb.bl.x;
-			float y = aabb.tr.y;
-			float hw = Math.abs(aabb.bl.x - aabb.tr.x) / 2;
-			float hh = Math.abs(aabb.bl.y - aabb.tr.y) / 2;
-			
-			switch(nodeIndex) {
-			case 0:
-				return new AABB(x, y, hw, hh); 
-			case 1:
-				return new AABB(x + hw, y, hw, hh); 
-			case 2:
-				return new AABB(x, y + hh, hw, hh); 
-			case 3:
-				return new AABB(x + hw, y + hh, hw, hh); 
-			default:
-				assert(false);
-				return new AABB(0, 0, 0, 0);
+	}
+
+	/**
+	 * Draws the QuadTree structure (including nodes and contained elements) onto the
+	 * provided Graphics2D object.
+	 *
+	 * @param gfx The Graphics2D object onto which the QuadTree will be drawn.
+	 */
+	@Override
+	public void draw(Graphics2D gfx) {
+		draw(gfx, root);
+	}
+
+	private void draw(Graphics2D gfx, Node node) {
+		int x = (int)(node.cx - node.half), y = (int)(node.cy - node.half), size = (int)(node.half * 2);
+
+		gfx.setColor(Color.RED);
+		gfx.drawString("" + node.contains.size(), x, y + size);
+		for(int i = 0; i < node.contains.size(); i++) {
+			node.contains.get(i).element.getAABB().draw(gfx);
+		}
+
+		gfx.setColor(Color.BLUE);
+		gfx.drawRect(x, y, size, size);
+
+		if(node.children != null) {
+			for(int i = 0; i < 4; i++) {
+				if(node.children[i] != null)
+					draw(gfx, node.children[i]);
 			}
 		}
 	}
-	
-	/**
-     * Constructs a QuadTree with a given width and height.
-     * 
-     * @param w The width of the area to be managed by the QuadTree.
-     * @param h The height of the area to be managed by the QuadTree.
-     */
-    public QuadTree(int w, int h) {
-        root = new TreeNode(0, 0, 0, w, h);
-    }
-
-    /**
-     * Finds all elements that intersect with a given element.
-     * 
-     * @param e The element for which to find intersecting elements.
-     * @return A list of TreeElement objects that intersect with the given element.
-     */
-    public List<TreeElement> intersecting(TreeElement e) {
-        List<TreeElement> arr = new ArrayList<TreeElement>();
-        
-        root.getIntersecting(arr, e);
-        for (int i = 0; i < arr.size(); i++) {
-            arr.get(i).setQueriedStatus(false);
-        }
-        
-        return arr;
-    }
-
-    /**
-     * Adds an element to the QuadTree.
-     * 
-     * @param e The element to be added to the QuadTree.
-     */
-    public void add(TreeElement e) {
-        root.add(e);
-    }
-
-    /**
-     * Removes an element from the QuadTree.
-     * 
-     * @param e The element to be removed from the QuadTree.
-     */
-    public void remove(TreeElement e) {
-        root.remove(e);
-    }
-
-    /**
-     * Draws the QuadTree structure (including nodes and contained elements) onto the 
-     * provided Graphics2D object.
-     * 
-     * @param gfx The Graphics2D object onto which the QuadTree will be drawn.
-     */
-    public void draw(Graphics2D gfx) {
-        root.draw(gfx);
-    }
-
-    /**
-     * Clears the QuadTree, removing all elements and resetting the structure.
-     */
-    public void clear() {
-        root.clear();
-    }
-}
\ No newline at end of file
+
+	/**
+	 * Clears the QuadTree, removing all elements and resetting the structure.
+	 */
+	@Override
+	public void clear() {
+		m_proxies.clear();
+		root = new Node(root.cx, root.cy, m_initialHalfSize);
+	}
+}
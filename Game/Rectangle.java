@@ -9,6 +9,9 @@ import java.awt.Graphics2D;
 public class Rectangle extends Fixture {
     private float m_w, m_h;
 
+    // Signs of the half extents of each corner, in the same order as getPoints(Vec2D, float)
+    private static final float CornerSigns[] = { -1, -1, 1, -1, 1, 1, -1, 1 };
+
     /**
      * Constructs a Rectangle with the specified mass, width, and height.
      * 
@@ -23,6 +26,24 @@ public class Rectangle extends Fixture {
         m_h = h;
     }
 
+    /**
+     * Returns the width of the rectangle.
+     * 
+     * @return The width.
+     */
+    public float getWidth() {
+        return m_w;
+    }
+
+    /**
+     * Returns the height of the rectangle.
+     * 
+     * @return The height.
+     */
+    public float getHeight() {
+        return m_h;
+    }
+
     /**
      * Calculates the corner points of the rectangle after applying a rotation and 
      * offset transformation.
@@ -51,43 +72,50 @@ public class Rectangle extends Fixture {
     }
 
     /**
-     * Calculates and returns the Axis-Aligned Bounding Box (AABB) of the rectangle 
-     * after applying the specified rotation.
+     * Writes the corner points of the rectangle, rotated by rot and offset by (x, y), into xs and ys.
      * 
+     * @param x The x position to which the rectangle is offset.
+     * @param y The y position to which the rectangle is offset.
      * @param rot The rotation angle (in radians) to apply to the rectangle.
-     * @return The AABB that bounds the rotated rectangle.
+     * @param xs The array to write the x coordinates of the four corners into.
+     * @param ys The array to write the y coordinates of the four corners into.
      */
-    @Override
-    public AABB getAABB(float rot) {
+    public void getPoints(float x, float y, float rot, float xs[], float ys[]) {
         float hw = m_w / 2;
         float hh = m_h / 2;
-        
-        Vec2D corners[] = {
-            new Vec2D(-hw, -hh).rotate(rot),
-            new Vec2D( hw, -hh).rotate(rot),
-            new Vec2D( hw,  hh).rotate(rot),
-            new Vec2D(-hw,  hh).rotate(rot),
-        };
+        float cos = (float) Math.cos(rot);
+        float sin = (float) Math.sin(rot);
 
-        Vec2D min = new Vec2D(Float.MAX_VALUE, Float.MAX_VALUE);
-        Vec2D max = new Vec2D(-Float.MAX_VALUE, -Float.MAX_VALUE);
-        for (int i = 0; i < corners.length; i++) {
-            if (corners[i].x < min.x) {
-                min.x = corners[i].x;
-            }
-            if (corners[i].y < min.y) {
-                min.y = corners[i].y;
-            }
-            
-            if (corners[i].x > max.x) {
-                max.x = corners[i].x;
-            }
-            if (corners[i].y > max.y) {
-                max.y = corners[i].y;
-            }
+        for (int i = 0; i < 4; i++) {
+            float cx = CornerSigns[i * 2] * hw, cy = CornerSigns[i * 2 + 1] * hh;
+            xs[i] = cx * cos - cy * sin + x;
+            ys[i] = cx * sin + cy * cos + y;
         }
+    }
+
+    /**
+     * Calculates the Axis-Aligned Bounding Box (AABB) of the rectangle after applying the
+     * specified rotation and offset, into out. The half extents of the rotated rectangle
+     * are found directly from the rotation, instead of rotating each corner.
+     * 
+     * @param rot The rotation angle (in radians) to apply to the rectangle.
+     * @param x The x coordinate of the rectangle's center.
+     * @param y The y coordinate of the rectangle's center.
+     * @param out The AABB to write into.
+     * @return out, the AABB that bounds the rotated rectangle.
+     */
+    @Override
+    public AABB getAABB(float rot, float x, float y, AABB out) {
+        float cos = Math.abs((float) Math.cos(rot));
+        float sin = Math.abs((float) Math.sin(rot));
+        float ex = (m_w * cos + m_h * sin) / 2;
+        float ey = (m_w * sin + m_h * cos) / 2;
 
-        return new AABB(new Vec2D(min.x, max.y), new Vec2D(max.x, min.y));
+        out.bl.x = x - ex;
+        out.bl.y = y + ey;
+        out.tr.x = x + ex;
+        out.tr.y = y - ey;
+        return out;
     }
 
     /**
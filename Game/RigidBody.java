@@ -2,6 +2,7 @@ package Game;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.util.ArrayList;
 
 /**
  * The RigidBody class represents a rigid body in a physics world, including its position, rotation,
@@ -15,51 +16,137 @@ public class RigidBody extends TreeElement {
     private float m_mass = 0;
 
     private boolean m_isStatic;
+    // Bullets are swept along their motion each step, so they cannot pass through bodies
+    private boolean m_isBullet = false;
     private Integer m_id;
 
-    // Kinematics
-    private Vec2D m_pos;
-    private Vec2D m_lastPos;
-    private float m_rot;
-    private float m_angularVel;
-    private float m_linearDampening;
+    // Kinematics are kept in a row of the world's body store, so a step can integrate every body at once
+    BodyStore store;
+    int row;
 
     // Single fixture
     private Fixture m_fixture;
 
-    // Has tested for collision tested
-    private boolean m_collTested = false;
+    // Cached AABB, valid while the position, rotation and fixture match the ones it was computed for.
+    // The values are compared rather than flagged, as the store columns are written without going through the body
+    private AABB m_aabb = new AABB(new Vec2D(), new Vec2D());
+    private float m_aabbX = Float.NaN, m_aabbY = Float.NaN, m_aabbRot = Float.NaN;
+    private Fixture m_aabbFixture;
+
     private boolean m_isMarkedForDeletion = false;
 
+    // Sleeping bodies are neither integrated nor tested against other sleeping or static bodies
+    private boolean m_sleeping = false;
+    // Consecutive steps spent below the sleep tolerances
+    private int m_sleepSteps = 0;
+    // Position and rotation when put to sleep, so changes made from outside the world wake the body
+    private float m_sleepX, m_sleepY, m_sleepRot;
+    // Position at the end of the last step, to tell how far the body really moved over a step
+    private float m_restX, m_restY;
+    // Bodies that were touching this one when it was put to sleep, woken together with it
+    private ArrayList<RigidBody> m_island;
+
+    // Index of this body among the awake bodies of the current step, used to group bodies into islands
+    int islandIndex;
+
     private int m_selfMask = 1;
     private int m_collMask = Integer.MAX_VALUE;
 
     private Object m_userData;
     
 	private void setLastPos() {
-		m_lastPos = m_pos.clone();
+		store.lastX[row] = store.posX[row];
+		store.lastY[row] = store.posY[row];
 	}
 	
 	/**
-	 * Constructs a new RigidBody with the specified parameters.
+	 * Constructs a new RigidBody with the specified parameters. The body takes a row of the world's
+	 * body store, or a store of its own when it has no world.
 	 * 
 	 * @param world The PhysicsWorld this RigidBody belongs to.
 	 * @param id The unique identifier for this RigidBody.
-	 * @param pos The initial position of the RigidBody.
+	 * @param pos The initial position of the RigidBody, which is copied.
 	 * @param rot The initial rotation of the RigidBody in radians.
 	 * @param isStatic Whether the RigidBody is static (non-movable).
 	 */
 	public RigidBody(PhysicsWorld world, Integer id, Vec2D pos, float rot, boolean isStatic) {
 	    m_world = world;
 	    m_id = id;
-	    m_pos = pos;
-	    m_rot = rot;
 	    m_isStatic = isStatic;
-	    m_linearDampening = 1.0f;
+
+	    store = world != null ? world.getBodyStore() : new BodyStore(1);
+	    row = store.allocate(this);
+	    store.posX[row] = pos.x;
+	    store.posY[row] = pos.y;
+	    store.rot[row] = rot;
+	    store.linearDampening[row] = 1.0f;
 
 	    setLastPos();
 	}
+
+	/**
+	 * Moves the kinematic state of this RigidBody into a new row of another store, releasing its current row.
+	 * 
+	 * @param target The store to move into.
+	 */
+	void moveToStore(BodyStore target) {
+	    BodyStore source = store;
+	    int sourceRow = row;
+
+	    int targetRow = target.allocate(this);
+	    target.copyRow(targetRow, source, sourceRow);
+	    source.release(sourceRow);
+
+	    store = target;
+	    row = targetRow;
+	}
+
+	/**
+	 * Moves the kinematic state of this RigidBody out of the world's store into a store of its own,
+	 * so that it stays readable after the body was destroyed.
+	 */
+	void detach() {
+	    moveToStore(new BodyStore(1));
+	}
     
+    /**
+     * The number of floats written by {@link #saveState(float[], int)}.
+     */
+    static final int StateStride = 7;
+
+    /**
+     * Writes the kinematic state of this RigidBody into buf, starting at offset.
+     * 
+     * @param buf The buffer to write into, it must have room for StateStride floats.
+     * @param offset The index to start writing at.
+     */
+    void saveState(float buf[], int offset) {
+        buf[offset] = store.posX[row];
+        buf[offset + 1] = store.posY[row];
+        buf[offset + 2] = store.lastX[row];
+        buf[offset + 3] = store.lastY[row];
+        buf[offset + 4] = store.rot[row];
+        buf[offset + 5] = store.angularVel[row];
+        buf[offset + 6] = store.linearDampening[row];
+    }
+
+    /**
+     * Reads the kinematic state written by {@link #saveState(float[], int)} back into this RigidBody.
+     * 
+     * @param buf The buffer to read from.
+     * @param offset The index to start reading at.
+     */
+    void loadState(float buf[], int offset) {
+        store.posX[row] = buf[offset];
+        store.posY[row] = buf[offset + 1];
+        store.lastX[row] = buf[offset + 2];
+        store.lastY[row] = buf[offset + 3];
+        store.rot[row] = buf[offset + 4];
+        store.angularVel[row] = buf[offset + 5];
+        store.linearDampening[row] = buf[offset + 6];
+        wake();
+    }
+
     /**
      * Returns whether this RigidBody is marked for deletion.
      * 
@@ -76,22 +163,49 @@ public class RigidBody extends TreeElement {
         m_isMarkedForDeletion = true;
     }
 
+    /**
+     * Sets whether this RigidBody is marked for deletion.
+     * 
+     * @param marked true to mark the RigidBody for deletion, false to clear the mark.
+     */
+    void setMarkedForDeletion(boolean marked) {
+        m_isMarkedForDeletion = marked;
+    }
+
     /**
      * Returns the current rotation of this RigidBody in radians.
      * 
      * @return The rotation of the RigidBody.
      */
     public float getRot() {
-        return m_rot;
+        return store.rot[row];
     }
 
     /**
      * Returns the current position of this RigidBody.
      * 
-     * @return A Vec2D representing the position of the RigidBody.
+     * @return A new Vec2D representing the position of the RigidBody.
      */
     public Vec2D getPos() {
-        return m_pos.clone();
+        return new Vec2D(store.posX[row], store.posY[row]);
+    }
+
+    /**
+     * Returns the x coordinate of this RigidBody's position, without copying the position.
+     * 
+     * @return The x coordinate of the RigidBody.
+     */
+    public float getX() {
+        return store.posX[row];
+    }
+
+    /**
+     * Returns the y coordinate of this RigidBody's position, without copying the position.
+     * 
+     * @return The y coordinate of the RigidBody.
+     */
+    public float getY() {
+        return store.posY[row];
     }
 
     /**
@@ -100,17 +214,19 @@ public class RigidBody extends TreeElement {
      * @param rot The rotation to set in radians.
      */
     public void setRot(float rot) {
-        m_rot = rot;
+        store.rot[row] = rot;
     }
 
     /**
-     * Sets the position of this RigidBody to the specified value.
+     * Sets the position of this RigidBody to the specified value. The position is copied.
      * 
      * @param pos The position to set.
      */
     public void setPos(Vec2D pos) {
+        wake();
         setLastPos();
-        m_pos = pos;
+        store.posX[row] = pos.x;
+        store.posY[row] = pos.y;
     }
 
     /**
@@ -120,46 +236,47 @@ public class RigidBody extends TreeElement {
      * @return The RigidBody itself for method chaining.
      */
     public RigidBody move(Vec2D amount) {
+        return move(amount.x, amount.y);
+    }
+
+    /**
+     * Moves this RigidBody by a specified amount, updating its position, without allocating.
+     * 
+     * @param dx The amount to move the RigidBody by along x.
+     * @param dy The amount to move the RigidBody by along y.
+     * @return The RigidBody itself for method chaining.
+     */
+    public RigidBody move(float dx, float dy) {
         setLastPos();
-        m_pos.add(amount);
+        store.posX[row] += dx;
+        store.posY[row] += dy;
         return this;
     }
 
     /**
      * Integrates the position and rotation of the RigidBody using the provided delta time.
      * If linear dampening is set to a special value (NoVerletIntegration), no integration occurs.
+     * Sleeping bodies are not integrated. The world integrates its bodies all at once through its
+     * body store instead, this integrates a single body the same way.
      * 
      * @param deltaTime The time step to integrate over.
      * @return The updated RigidBody.
      */
     public RigidBody inegrate(float deltaTime) {
-        Vec2D velocity = m_pos.clone().sub(m_lastPos);
+        if (m_sleeping)
+            return this;
+
+        float vx = store.posX[row] - store.lastX[row];
+        float vy = store.posY[row] - store.lastY[row];
         setLastPos();
 
-        m_pos.add(velocity);
-        m_rot += m_angularVel * deltaTime;
+        store.posX[row] += vx;
+        store.posY[row] += vy;
+        store.rot[row] += store.angularVel[row] * deltaTime;
 
         return this;
     }
 
-    /**
-     * Sets whether this RigidBody has been tested for collisions.
-     * 
-     * @param collTested true if the RigidBody has been collision tested, false otherwise.
-     */
-    public void setCollisionTested(boolean collTested) {
-        m_collTested = collTested;
-    }
-
-    /**
-     * Returns whether this RigidBody has been tested for collisions.
-     * 
-     * @return true if collision testing has been done, false otherwise.
-     */
-    public boolean hasCollisionTested() {
-        return m_collTested;
-    }
-
     /**
      * Translates (moves) this RigidBody by a specified amount.
      * 
@@ -167,7 +284,9 @@ public class RigidBody extends TreeElement {
      * @return The RigidBody itself for method chaining.
      */
     public RigidBody translate(Vec2D pos) {
-        m_pos.add(pos);
+        wake();
+        store.posX[row] += pos.x;
+        store.posY[row] += pos.y;
         return this;
     }
 
@@ -178,7 +297,8 @@ public class RigidBody extends TreeElement {
      * @return The RigidBody itself for method chaining.
      */
     public RigidBody rotate(float rot) {
-        m_rot += rot;
+        wake();
+        store.rot[row] += rot;
         return this;
     }
 
@@ -188,7 +308,7 @@ public class RigidBody extends TreeElement {
      * @param damp The linear dampening factor to set.
      */
     public void setLinearDampening(float damp) {
-        m_linearDampening = damp;
+        store.linearDampening[row] = damp;
     }
 
     /**
@@ -198,7 +318,9 @@ public class RigidBody extends TreeElement {
      * @return The RigidBody itself for method chaining.
      */
     public RigidBody applyLinearVelocity(Vec2D linearVel) {
-        m_lastPos.add(linearVel.scale(-1.0f));
+        wake();
+        store.lastX[row] -= linearVel.x;
+        store.lastY[row] -= linearVel.y;
         return this;
     }
 
@@ -209,7 +331,9 @@ public class RigidBody extends TreeElement {
      * @return The RigidBody itself for method chaining.
      */
     public RigidBody setLinearVelocity(Vec2D linearVel) {
-        m_lastPos = m_pos.clone().add(linearVel.scale(-1.0f));
+        wake();
+        store.lastX[row] = store.posX[row] - linearVel.x;
+        store.lastY[row] = store.posY[row] - linearVel.y;
         return this;
     }
 
@@ -220,10 +344,65 @@ public class RigidBody extends TreeElement {
      * @return The RigidBody itself for method chaining.
      */
     public RigidBody applyAngularVelocity(float angularVel) {
-        m_angularVel += angularVel;
+        wake();
+        store.angularVel[row] += angularVel;
         return this;
     }
 
+    /**
+     * Sets whether this RigidBody is a bullet. Bullets with a circle fixture are swept from their last
+     * position to their new one every step, and stopped at the first body they would hit, so fast
+     * bullets cannot pass through bodies between two steps.
+     * 
+     * @param bullet true to make the RigidBody a bullet, false otherwise.
+     */
+    public void setBullet(boolean bullet) {
+        m_isBullet = bullet;
+    }
+
+    /**
+     * Returns whether this RigidBody is a bullet, see {@link #setBullet(boolean)}.
+     * 
+     * @return true if the RigidBody is a bullet, false otherwise.
+     */
+    public boolean isBullet() {
+        return m_isBullet;
+    }
+
+    /**
+     * Returns the x coordinate this RigidBody was at before the last step.
+     * 
+     * @return The last x coordinate.
+     */
+    float getLastX() {
+        return store.lastX[row];
+    }
+
+    /**
+     * Returns the y coordinate this RigidBody was at before the last step.
+     * 
+     * @return The last y coordinate.
+     */
+    float getLastY() {
+        return store.lastY[row];
+    }
+
+    /**
+     * Moves this RigidBody back along its motion to (x, y), keeping its velocity.
+     * 
+     * @param x The x coordinate to move to.
+     * @param y The y coordinate to move to.
+     */
+    void rewindTo(float x, float y) {
+        float vx = store.posX[row] - store.lastX[row];
+        float vy = store.posY[row] - store.lastY[row];
+
+        store.posX[row] = x;
+        store.posY[row] = y;
+        store.lastX[row] = x - vx;
+        store.lastY[row] = y - vy;
+    }
+
     /**
      * Returns whether this RigidBody is static (does not move).
      * 
@@ -243,12 +422,104 @@ public class RigidBody extends TreeElement {
     }
 
     /**
-     * Returns the Axis-Aligned Bounding Box (AABB) of this RigidBody.
+     * Returns whether this RigidBody is asleep. Sleeping bodies keep their place without being
+     * simulated until something touches or moves them.
+     * 
+     * @return true if the RigidBody is sleeping, false otherwise.
+     */
+    public boolean isSleeping() {
+        return m_sleeping;
+    }
+
+    /**
+     * Wakes this RigidBody, along with every body of the island it was put to sleep with. An awake
+     * body keeps counting its resting steps, so a body pushed against something every step still
+     * falls asleep once it stops moving.
+     */
+    public void wake() {
+        if (!m_sleeping)
+            return;
+
+        ArrayList<RigidBody> island = m_island;
+        if (island == null) {
+            m_sleeping = false;
+            return;
+        }
+
+        for (RigidBody body : island) {
+            body.m_sleeping = false;
+            body.m_sleepSteps = 0;
+            body.m_island = null;
+        }
+    }
+
+    /**
+     * Puts this RigidBody to sleep, stopping it in place.
+     * 
+     * @param island The bodies being put to sleep together with this one, including it.
+     */
+    void sleep(ArrayList<RigidBody> island) {
+        m_sleeping = true;
+        m_island = island;
+        setLastPos();
+        store.angularVel[row] = 0;
+        m_sleepX = store.posX[row];
+        m_sleepY = store.posY[row];
+        m_sleepRot = store.rot[row];
+    }
+
+    /**
+     * Returns whether the position or rotation of this sleeping RigidBody was changed from outside the
+     * world, for example by a transform synced into it.
+     * 
+     * @return true if the RigidBody has moved since it was put to sleep, false otherwise.
+     */
+    boolean movedWhileSleeping() {
+        return store.posX[row] != m_sleepX || store.posY[row] != m_sleepY || store.rot[row] != m_sleepRot;
+    }
+
+    /**
+     * Counts the steps this RigidBody has stayed below the given tolerances, resetting the count once it moves faster.
+     * The distance is measured from where the body ended the last step rather than from its last position, which
+     * resolving a contact overwrites, so a body pushed into a wall every step and pushed back out counts as resting.
+     * 
+     * @param linearTolerance The distance per step below which the body counts as resting.
+     * @param angularTolerance The angular velocity below which the body counts as resting.
+     * @return The number of consecutive steps the body has been resting for.
+     */
+    int updateSleep(float linearTolerance, float angularTolerance) {
+        float vx = store.posX[row] - m_restX;
+        float vy = store.posY[row] - m_restY;
+        m_restX = store.posX[row];
+        m_restY = store.posY[row];
+
+        if (vx * vx + vy * vy > linearTolerance * linearTolerance || Math.abs(store.angularVel[row]) > angularTolerance) {
+            m_sleepSteps = 0;
+        } else {
+            m_sleepSteps++;
+        }
+
+        return m_sleepSteps;
+    }
+
+    /**
+     * Returns the Axis-Aligned Bounding Box (AABB) of this RigidBody. The AABB is cached and only
+     * recomputed once the position or rotation has changed. It is owned by this RigidBody, so
+     * callers must not modify it, and must copy it to keep it past the next change.
      * 
      * @return The AABB of the RigidBody.
      */
     public AABB getAABB() {
-        return m_fixture.getAABB(m_rot).translate(m_pos);
+        float x = store.posX[row], y = store.posY[row], rot = store.rot[row];
+        if (m_aabbX != x || m_aabbY != y || m_aabbRot != rot || m_aabbFixture != m_fixture) {
+            m_fixture.getAABB(rot, x, y, m_aabb);
+            m_aabbX = x;
+            m_aabbY = y;
+            m_aabbRot = rot;
+            m_aabbFixture = m_fixture;
+        }
+
+        return m_aabb;
     }
 
     /**
@@ -277,16 +548,17 @@ public class RigidBody extends TreeElement {
 
     /**
      * Draws the RigidBody on the provided Graphics2D object, including its AABB and fixture.
+     * The AABB of a sleeping body is drawn in gray.
      * 
      * @param gfx The Graphics2D object used for drawing.
      */
     public void draw(Graphics2D gfx) {
-        gfx.setColor(Color.PINK);
+        gfx.setColor(m_sleeping ? Color.GRAY : Color.PINK);
         getAABB().draw(gfx);
         gfx.setColor(Color.YELLOW);
-        m_fixture.draw(gfx, m_pos, m_rot);
+        m_fixture.draw(gfx, getPos(), getRot());
         gfx.setColor(Color.CYAN);
-        gfx.fillOval((int) m_pos.x - 2, (int) m_pos.y - 2, 4, 4);
+        gfx.fillOval((int) getX() - 2, (int) getY() - 2, 4, 4);
     }
 
     /**
@@ -22,12 +22,13 @@ public class RigidBodyComponent extends Component {
 
     /**
      * Called when the component is removed.
-     * Destroys the associated RigidBody in the world and nullifies the reference.
+     * Destroys the associated RigidBody in the world. The reference is kept, so an entity brought back
+     * by {@link EntityWorld#restore(EntityWorld.Snapshot)} still refers to the body brought back by
+     * {@link PhysicsWorld#restore(PhysicsWorld.Snapshot)}.
      */
     @Override
     public void onRemove() {
         body.getWorld().destroy(body.id());
-        body = null;
     }
     
     /**
@@ -41,12 +42,12 @@ public class RigidBodyComponent extends Component {
     }
 
     /**
-     * Clones this component. Currently not implemented.
+     * Clones this component. The clone refers to the same RigidBody, the body itself is not copied.
      * 
-     * @return null as cloning is not supported in this implementation.
+     * @return A new RigidBodyComponent referring to the same body.
      */
     @Override
     public Component clone() {
-        return null;
+        return new RigidBodyComponent(body);
     }
 }
\ No newline at end of file
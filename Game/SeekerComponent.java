@@ -3,7 +3,9 @@ package Game;
 /**
  * Used to track entities that want to be moved by the pathfinding system.
  */
-public class SeekerComponent extends Component {
+public class SeekerComponent extends Component implements PackedComponent {
+    /** The direction the seeker was last sent in, so a sleeping seeker is only woken by a new one */
+    public Vec2D heading = new Vec2D(0);
 
     /**
      * Returns the class type of this component.
@@ -22,7 +24,43 @@ public class SeekerComponent extends Component {
      */
     @Override
     public Component clone() {
-        return new SeekerComponent();
+        SeekerComponent clone = new SeekerComponent();
+        clone.heading = heading.clone();
+
+        return clone;
+    }
+
+    /**
+     * Returns the number of floats written by saveState.
+     * 
+     * @return The size of the packed state.
+     */
+    @Override
+    public int stateSize() {
+        return 2;
+    }
+
+    /**
+     * Writes the heading into buf.
+     * 
+     * @param buf The buffer to write into.
+     * @param offset The index to start writing at.
+     */
+    @Override
+    public void saveState(float buf[], int offset) {
+        buf[offset] = heading.x;
+        buf[offset + 1] = heading.y;
     }
 
-}
\ No newline at end of file
+    /**
+     * Reads the heading from buf.
+     * 
+     * @param buf The buffer to read from.
+     * @param offset The index to start reading at.
+     */
+    @Override
+    public void loadState(float buf[], int offset) {
+        heading.x = buf[offset];
+        heading.y = buf[offset + 1];
+    }
+}
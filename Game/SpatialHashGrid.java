@@ -0,0 +1,393 @@
+package Game;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A broadphase that divides the plane into uniform square cells and stores each element in
+ * every cell its AABB touches. Cells are hashed by their coordinates, so the grid is unbounded.
+ * Works best when elements are about the size of a cell, such as crowds of equally sized circles.
+ * <p>
+ * Cells live in parallel arrays and are found through an open addressing table from the packed
+ * cell coordinates to the cell's index, probed linearly, so looking up a cell neither boxes its key
+ * nor allocates. Cells emptied by a remove are taken out of the table and their index is reused.
+ */
+public class SpatialHashGrid implements BroadPhase {
+	private static final int Empty = -1;
+	
+	private float m_cellSize;
+	private ProxyList<Handle> m_proxies;
+	private ArrayList<Handle> m_queryResults;
+	// Stamped onto handles as they are collected, so an element in several cells is only collected once
+	private int m_queryStamp = 0;
+	
+	// Table from cell key to cell index, Empty for free buckets. Its size is a power of two
+	private long m_bucketKeys[];
+	private int m_buckets[];
+	
+	// Cells, as parallel arrays indexed by cell index
+	private long m_cellKeys[];
+	private Handle m_cellHandles[][];
+	private int m_cellSizes[];
+	private int m_cellCount;
+	// Cell indices below m_cellCount that were emptied and can be reused
+	private int m_freeCells[];
+	private int m_freeCount;
+	
+	/**
+	 * The proxy of an element: the range of cells it is stored in, as inclusive cell coordinates.
+	 */
+	private static class Handle extends Proxy {
+		int minX, minY, maxX, maxY;
+		int queryStamp;
+		
+		Handle(SpatialHashGrid owner, TreeElement e) {
+			super(owner, e);
+		}
+	}
+	
+	/**
+	 * Creates an empty grid.
+	 * 
+	 * @param cellSize The side length of a cell, ideally about the size of the elements.
+	 */
+	public SpatialHashGrid(float cellSize) {
+		m_cellSize = cellSize;
+		m_proxies = new ProxyList<Handle>();
+		m_queryResults = new ArrayList<Handle>();
+		
+		m_bucketKeys = new long[64];
+		m_buckets = new int[64];
+		Arrays.fill(m_buckets, Empty);
+		
+		m_cellKeys = new long[32];
+		m_cellHandles = new Handle[32][];
+		m_cellSizes = new int[32];
+		m_freeCells = new int[32];
+	}
+	
+	private static long key(int cx, int cy) {
+		return ((long)cx << 32) | (cy & 0xFFFFFFFFL);
+	}
+	
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+	
+	private int cell(float v) {
+		return (int)Math.floor(v / m_cellSize);
+	}
+	
+	/**
+	 * @return The bucket holding key, or the free bucket that ends its probe sequence. */
+	private int bucketOf(long key) {
+		int mask = m_buckets.length - 1;
+		int i = hash(key) & mask;
+		while(m_buckets[i] != Empty && m_bucketKeys[i] != key)
+			i = (i + 1) & mask;
+		
+		return i;
+	}
+	
+	/**
+	 * @return The index of the cell with the given coordinates, or Empty if it holds no elements. */
+	private int findCell(int cx, int cy) {
+		return m_buckets[bucketOf(key(cx, cy))];
+	}
+	
+	/**
+	 * Returns the index of the cell with the given coordinates, creating the cell if needed.
+	 */
+	private int findOrCreateCell(int cx, int cy) {
+		long key = key(cx, cy);
+		int bucket = bucketOf(key);
+		if(m_buckets[bucket] != Empty)
+			return m_buckets[bucket];
+		
+		int cell;
+		if(m_freeCount > 0) {
+			cell = m_freeCells[--m_freeCount];
+		} else {
+			if(m_cellCount == m_cellKeys.length) {
+				int capacity = m_cellCount * 2;
+				m_cellKeys = Arrays.copyOf(m_cellKeys, capacity);
+				m_cellHandles = Arrays.copyOf(m_cellHandles, capacity);
+				m_cellSizes = Arrays.copyOf(m_cellSizes, capacity);
+				m_freeCells = Arrays.copyOf(m_freeCells, capacity);
+			}
+			cell = m_cellCount++;
+		}
+		
+		m_cellKeys[cell] = key;
+		m_cellSizes[cell] = 0;
+		if(m_cellHandles[cell] == null)
+			m_cellHandles[cell] = new Handle[4];
+		
+		m_bucketKeys[bucket] = key;
+		m_buckets[bucket] = cell;
+		// Keep the table at most half full, so probe sequences stay short
+		if((m_cellCount - m_freeCount) * 2 > m_buckets.length)
+			rehash(m_buckets.length * 2);
+		
+		return cell;
+	}
+	
+	private void rehash(int capacity) {
+		long keys[] = m_bucketKeys;
+		int buckets[] = m_buckets;
+		
+		m_bucketKeys = new long[capacity];
+		m_buckets = new int[capacity];
+		Arrays.fill(m_buckets, Empty);
+		for(int i = 0; i < buckets.length; i++) {
+			if(buckets[i] == Empty)
+				continue;
+			
+			int bucket = bucketOf(keys[i]);
+			m_bucketKeys[bucket] = keys[i];
+			m_buckets[bucket] = buckets[i];
+		}
+	}
+	
+	/**
+	 * Takes an emptied cell out of the table, shifting back the entries probed past it so that
+	 * every remaining key is still found from its home bucket.
+	 */
+	private void freeCell(int cell) {
+		int mask = m_buckets.length - 1;
+		int hole = bucketOf(m_cellKeys[cell]);
+		m_buckets[hole] = Empty;
+		
+		for(int i = (hole + 1) & mask; m_buckets[i] != Empty; i = (i + 1) & mask) {
+			int home = hash(m_bucketKeys[i]) & mask;
+			// The entry stays if its home lies cyclically after the hole and up to i
+			boolean reachable = hole <= i ? hole < home && home <= i : hole < home || home <= i;
+			if(reachable)
+				continue;
+			
+			m_bucketKeys[hole] = m_bucketKeys[i];
+			m_buckets[hole] = m_buckets[i];
+			m_buckets[i] = Empty;
+			hole = i;
+		}
+		
+		m_freeCells[m_freeCount++] = cell;
+	}
+	
+	private void addToCells(Handle e) {
+		for(int cy = e.minY; cy <= e.maxY; cy++) {
+			for(int cx = e.minX; cx <= e.maxX; cx++) {
+				int cell = findOrCreateCell(cx, cy);
+				int size = m_cellSizes[cell];
+				if(size == m_cellHandles[cell].length)
+					m_cellHandles[cell] = Arrays.copyOf(m_cellHandles[cell], size * 2);
+				
+				m_cellHandles[cell][size] = e;
+				m_cellSizes[cell] = size + 1;
+			}
+		}
+	}
+	
+	private void removeFromCells(Handle e) {
+		for(int cy = e.minY; cy <= e.maxY; cy++) {
+			for(int cx = e.minX; cx <= e.maxX; cx++) {
+				int cell = findCell(cx, cy);
+				if(cell == Empty)
+					continue;
+				
+				Handle handles[] = m_cellHandles[cell];
+				int size = m_cellSizes[cell];
+				for(int i = 0; i < size; i++) {
+					if(handles[i] == e) {
+						handles[i] = handles[--size];
+						handles[size] = null;
+						break;
+					}
+				}
+				
+				m_cellSizes[cell] = size;
+				if(size == 0)
+					freeCell(cell);
+			}
+		}
+	}
+	
+	/**
+	 * Stores the range of cells bounds touches in e.
+	 * 
+	 * @return Whether the range changed.
+	 */
+	private boolean setCells(Handle e, AABB bounds) {
+		int minX = cell(bounds.bl.x), minY = cell(bounds.tr.y);
+		int maxX = cell(bounds.tr.x), maxY = cell(bounds.bl.y);
+		if(minX == e.minX && minY == e.minY && maxX == e.maxX && maxY == e.maxY)
+			return false;
+		
+		e.minX = minX;
+		e.minY = minY;
+		e.maxX = maxX;
+		e.maxY = maxY;
+		return true;
+	}
+	
+	/**
+	 * Collects every element overlapping bounds into arr, each once.
+	 */
+	private void collect(ArrayList<Handle> arr, AABB bounds) {
+		int stamp = ++m_queryStamp;
+		
+		for(int cy = cell(bounds.tr.y); cy <= cell(bounds.bl.y); cy++) {
+			for(int cx = cell(bounds.bl.x); cx <= cell(bounds.tr.x); cx++) {
+				int cell = findCell(cx, cy);
+				if(cell == Empty)
+					continue;
+				
+				Handle handles[] = m_cellHandles[cell];
+				for(int i = 0; i < m_cellSizes[cell]; i++) {
+					Handle other = handles[i];
+					
+					if(other.queryStamp != stamp && other.element.getAABB().intersects(bounds)) {
+						other.queryStamp = stamp;
+						arr.add(other);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Inserts an element into every cell its AABB touches.
+	 * 
+	 * @param e The element to insert.
+	 */
+	@Override
+	public void insert(TreeElement e) {
+		Handle handle = new Handle(this, e);
+		m_proxies.add(handle);
+		setCells(handle, e.getAABB());
+		addToCells(handle);
+	}
+
+	/**
+	 * Moves an element to match its current AABB. Cells are only touched when the
+	 * element's AABB has crossed into a different range of cells.
+	 * 
+	 * @param e The element to update.
+	 */
+	@Override
+	public void update(TreeElement e) {
+		Handle handle = (Handle)e.getProxy(this);
+		if(handle == null) {
+			insert(e);
+			return;
+		}
+		
+		int minX = handle.minX, minY = handle.minY, maxX = handle.maxX, maxY = handle.maxY;
+		if(!setCells(handle, e.getAABB()))
+			return;
+		
+		int newMinX = handle.minX, newMinY = handle.minY, newMaxX = handle.maxX, newMaxY = handle.maxY;
+		handle.minX = minX;
+		handle.minY = minY;
+		handle.maxX = maxX;
+		handle.maxY = maxY;
+		removeFromCells(handle);
+		
+		handle.minX = newMinX;
+		handle.minY = newMinY;
+		handle.maxX = newMaxX;
+		handle.maxY = newMaxY;
+		addToCells(handle);
+	}
+
+	/**
+	 * Removes an element from every cell it was stored in.
+	 * 
+	 * @param e The element to remove.
+	 */
+	@Override
+	public void remove(TreeElement e) {
+		Handle handle = (Handle)e.getProxy(this);
+		if(handle == null)
+			return;
+		
+		removeFromCells(handle);
+		m_proxies.remove(handle);
+		handle.unlink();
+	}
+
+	/**
+	 * Reports every element overlapping bounds.
+	 * 
+	 * @param bounds The AABB to query.
+	 * @param callback The callback to report elements to.
+	 */
+	@Override
+	public void query(AABB bounds, QueryCallback callback) {
+		m_queryResults.clear();
+		collect(m_queryResults, bounds);
+		for(int i = 0; i < m_queryResults.size(); i++)
+			callback.report(m_queryResults.get(i).element);
+	}
+
+	/**
+	 * Reports every pair of overlapping elements, by querying each element's AABB and
+	 * only reporting partners that come later in insertion order.
+	 * 
+	 * @param callback The callback to report pairs to.
+	 */
+	@Override
+	public void pairs(PairCallback callback) {
+		for(int i = 0; i < m_proxies.size(); i++) {
+			TreeElement a = m_proxies.get(i).element;
+			
+			m_queryResults.clear();
+			collect(m_queryResults, a.getAABB());
+			for(int j = 0; j < m_queryResults.size(); j++) {
+				Handle b = m_queryResults.get(j);
+				if(b.index > i)
+					callback.pair(a, b.element);
+			}
+		}
+	}
+
+	/**
+	 * Removes all elements from the grid.
+	 */
+	@Override
+	public void clear() {
+		m_proxies.clear();
+		
+		for(int i = 0; i < m_cellCount; i++) {
+			Arrays.fill(m_cellHandles[i], 0, m_cellSizes[i], null);
+			m_cellSizes[i] = 0;
+		}
+		Arrays.fill(m_buckets, Empty);
+		m_cellCount = 0;
+		m_freeCount = 0;
+	}
+
+	/**
+	 * Debug draws every occupied cell and the number of elements in it.
+	 * 
+	 * @param gfx The graphics to draw on.
+	 */
+	@Override
+	public void draw(Graphics2D gfx) {
+		for(int i = 0; i < m_cellCount; i++) {
+			if(m_cellSizes[i] == 0)
+				continue;
+			
+			int cx = (int)(m_cellKeys[i] >> 32);
+			int cy = (int)m_cellKeys[i];
+			
+			gfx.setColor(Color.BLUE);
+			new AABB(cx * m_cellSize, cy * m_cellSize, m_cellSize, m_cellSize).draw(gfx);
+			gfx.setColor(Color.RED);
+			gfx.drawString("" + m_cellSizes[i], cx * m_cellSize, cy * m_cellSize);
+		}
+	}
+}
@@ -0,0 +1,370 @@
+package Game;
+
+import java.util.Arrays;
+
+/**
+ * Times the phases of every {@link PhysicsWorld#progress(float)} step and counts the work done in
+ * them. The last step is kept as a {@link Stats} object, and the time of each phase and of the whole
+ * step over the last steps is kept in a rolling {@link Histogram}, so a slow tick can be traced back
+ * to the phase that blew its budget. Timing a phase costs one call to System.nanoTime().
+ */
+public class StepProfiler {
+    /** Waking bodies, destroying marked ones and integrating the awake ones */
+    public static final int INTEGRATE = 0;
+    /** Moving awake bodies in the dynamic broadphase */
+    public static final int BROADPHASE_UPDATE = 1;
+    /** Sweeping bullets against the bodies and tiles in their path */
+    public static final int SWEEP = 2;
+    /** Finding candidate pairs of dynamic bodies in the broadphase */
+    public static final int BROADPHASE_PAIRS = 3;
+    /** Querying the static broadphase and tile grids for every awake body */
+    public static final int STATIC_QUERIES = 4;
+    /** Testing the candidate pairs for contact */
+    public static final int NARROWPHASE = 5;
+    /** Matching the contacts with the last step's and resolving them, region by region when regions are set */
+    public static final int SOLVE = 6;
+    /** Grouping bodies into islands and putting resting islands to sleep */
+    public static final int SLEEP = 7;
+    /** Packing contacts into the contact stream and calling handlers and listeners */
+    public static final int EVENTS = 8;
+    /** The number of phases */
+    public static final int PhaseCount = 9;
+
+    private static final String PhaseNames[] = {
+        "integrate", "broadphase update", "sweep", "broadphase pairs", "static queries",
+        "narrowphase", "solve", "sleep", "events"
+    };
+
+    /**
+     * The timings and counters of a single step. The profiler reuses the same object every step.
+     */
+    public static class Stats {
+        long phaseNanos[] = new long[PhaseCount];
+        long totalNanos;
+        int bodiesIntegrated;
+        int bulletsSwept;
+        int candidatePairs;
+        int maskRejectedPairs;
+        int narrowphasePairs;
+        int narrowphaseHits;
+        int manifolds;
+        int beginContacts;
+        int endContacts;
+        int regions;
+        int seamPairs;
+
+        void reset() {
+            Arrays.fill(phaseNanos, 0);
+            totalNanos = 0;
+            bodiesIntegrated = bulletsSwept = 0;
+            candidatePairs = maskRejectedPairs = narrowphasePairs = 0;
+            narrowphaseHits = manifolds = 0;
+            beginContacts = endContacts = 0;
+            regions = seamPairs = 0;
+        }
+
+        /**
+         * @param phase The phase, such as {@link StepProfiler#NARROWPHASE}.
+         * @return The time spent in the phase, in nanoseconds. */
+        public long getPhaseNanos(int phase) {
+            return phaseNanos[phase];
+        }
+
+        /**
+         * @return The time spent in the whole step, in nanoseconds. */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * @return The number of awake bodies that were integrated. */
+        public int getBodiesIntegrated() {
+            return bodiesIntegrated;
+        }
+
+        /**
+         * @return The number of bullets that were swept. */
+        public int getBulletsSwept() {
+            return bulletsSwept;
+        }
+
+        /**
+         * @return The number of pairs reported by the broadphases and tile grids, before any filtering. */
+        public int getCandidatePairs() {
+            return candidatePairs;
+        }
+
+        /**
+         * @return The number of candidate pairs whose collision masks keep them from colliding. */
+        public int getMaskRejectedPairs() {
+            return maskRejectedPairs;
+        }
+
+        /**
+         * @return The number of pairs passed on to the narrowphase. */
+        public int getNarrowphasePairs() {
+            return narrowphasePairs;
+        }
+
+        /**
+         * @return The number of narrowphase pairs that were found touching. */
+        public int getNarrowphaseHits() {
+            return narrowphaseHits;
+        }
+
+        /**
+         * @return The number of collision manifolds that were resolved. */
+        public int getManifolds() {
+            return manifolds;
+        }
+
+        /**
+         * @return The number of contacts that began. */
+        public int getBeginContacts() {
+            return beginContacts;
+        }
+
+        /**
+         * @return The number of contacts that ended. */
+        public int getEndContacts() {
+            return endContacts;
+        }
+
+        /**
+         * @return The number of regions colliding pairs were resolved in, 0 without regions, see
+         * {@link PhysicsWorld#setRegionSize(float, float)}. */
+        public int getRegions() {
+            return regions;
+        }
+
+        /**
+         * @return The number of colliding pairs crossing region borders, resolved by the seam pass. */
+        public int getSeamPairs() {
+            return seamPairs;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("step %.3fms:", totalNanos / 1.0e6));
+            for (int i = 0; i < PhaseCount; i++)
+                out.append(String.format(" %s %.3fms,", PhaseNames[i], phaseNanos[i] / 1.0e6));
+            out.append(" bodies ").append(bodiesIntegrated);
+            out.append(", bullets ").append(bulletsSwept);
+            out.append(", candidates ").append(candidatePairs);
+            out.append(", mask rejected ").append(maskRejectedPairs);
+            out.append(", narrowphase ").append(narrowphasePairs);
+            out.append(", hits ").append(narrowphaseHits);
+            out.append(", manifolds ").append(manifolds);
+            out.append(", began ").append(beginContacts);
+            out.append(", ended ").append(endContacts);
+            out.append(", regions ").append(regions);
+            out.append(", seam ").append(seamPairs);
+            return out.toString();
+        }
+    }
+
+    /**
+     * A histogram of the durations of the last steps. Durations are sorted into power of two buckets,
+     * bucket i holding durations of at least 2^(i-1) and less than 2^i nanoseconds, and bucket 0 those of 0.
+     */
+    public static class Histogram {
+        /** The number of buckets */
+        public static final int BucketCount = 64;
+
+        private long m_samples[];
+        private int m_next = 0;
+        private int m_count = 0;
+        private long m_sum = 0;
+        private int m_buckets[] = new int[BucketCount];
+
+        Histogram(int window) {
+            m_samples = new long[window];
+        }
+
+        private static int bucketOf(long nanos) {
+            return 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0));
+        }
+
+        void add(long nanos) {
+            if (m_count == m_samples.length) {
+                long evicted = m_samples[m_next];
+                m_buckets[bucketOf(evicted)]--;
+                m_sum -= evicted;
+            } else {
+                m_count++;
+            }
+
+            m_samples[m_next] = nanos;
+            m_next = (m_next + 1) % m_samples.length;
+            m_buckets[bucketOf(nanos)]++;
+            m_sum += nanos;
+        }
+
+        void clear() {
+            Arrays.fill(m_buckets, 0);
+            m_next = m_count = 0;
+            m_sum = 0;
+        }
+
+        /**
+         * @return The number of steps in the histogram, at most the profiler's window. */
+        public int getSampleCount() {
+            return m_count;
+        }
+
+        /**
+         * @param bucket The index of the bucket.
+         * @return The number of steps whose duration falls in the bucket. */
+        public int getBucket(int bucket) {
+            return m_buckets[bucket];
+        }
+
+        /**
+         * @return The mean duration, in nanoseconds. */
+        public double getMean() {
+            return m_count == 0 ? 0 : (double) m_sum / m_count;
+        }
+
+        /**
+         * @return The longest duration, in nanoseconds. */
+        public long getMax() {
+            long max = 0;
+            for (int i = 0; i < m_count; i++)
+                max = Math.max(max, m_samples[i]);
+            return max;
+        }
+
+        /**
+         * Returns an upper bound of the duration that the given fraction of the steps stay under,
+         * precise to the bucket it falls into.
+         *
+         * @param fraction The fraction of steps, between 0 and 1, such as 0.99.
+         * @return The exclusive upper bound of the bucket holding the percentile, in nanoseconds.
+         */
+        public long getPercentile(double fraction) {
+            long target = (long) Math.ceil(fraction * m_count);
+            long seen = 0;
+            for (int i = 0; i < BucketCount; i++) {
+                seen += m_buckets[i];
+                if (seen >= target && seen > 0)
+                    return i == 0 ? 0 : i == 63 ? Long.MAX_VALUE : 1L << i;
+            }
+
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("mean %.3fms, p50 <%.3fms, p99 <%.3fms, max %.3fms over %d steps",
+                    getMean() / 1.0e6, getPercentile(0.5) / 1.0e6, getPercentile(0.99) / 1.0e6,
+                    getMax() / 1.0e6, m_count);
+        }
+    }
+
+    private Stats m_stats = new Stats();
+    private Histogram m_phases[] = new Histogram[PhaseCount];
+    private Histogram m_total;
+    private long m_start, m_mark;
+
+    /**
+     * Constructs a profiler whose histograms cover the given number of steps.
+     *
+     * @param window The number of most recent steps kept in the histograms.
+     */
+    public StepProfiler(int window) {
+        window = Math.max(window, 1);
+        for (int i = 0; i < PhaseCount; i++)
+            m_phases[i] = new Histogram(window);
+        m_total = new Histogram(window);
+    }
+
+    /**
+     * Starts timing a step, resetting the stats of the last one.
+     */
+    void begin() {
+        m_stats.reset();
+        m_start = m_mark = System.nanoTime();
+    }
+
+    /**
+     * Ends a phase, charging the time since the last phase ended, or since the step began, to it.
+     *
+     * @param phase The phase that ended.
+     */
+    void mark(int phase) {
+        long now = System.nanoTime();
+        m_stats.phaseNanos[phase] += now - m_mark;
+        m_mark = now;
+    }
+
+    /**
+     * Ends timing a step, and adds its timings to the histograms.
+     */
+    void end() {
+        m_stats.totalNanos = m_mark - m_start;
+        for (int i = 0; i < PhaseCount; i++)
+            m_phases[i].add(m_stats.phaseNanos[i]);
+        m_total.add(m_stats.totalNanos);
+    }
+
+    /**
+     * Returns the stats of the last step, which are only valid until the next step.
+     *
+     * @return The stats of the last step.
+     */
+    public Stats getStats() {
+        return m_stats;
+    }
+
+    /**
+     * Returns the histogram of the time spent in a phase.
+     *
+     * @param phase The phase, such as {@link #NARROWPHASE}.
+     * @return The histogram of the phase.
+     */
+    public Histogram getHistogram(int phase) {
+        return m_phases[phase];
+    }
+
+    /**
+     * Returns the histogram of the time spent in whole steps.
+     *
+     * @return The histogram of the steps.
+     */
+    public Histogram getTotalHistogram() {
+        return m_total;
+    }
+
+    /**
+     * Returns the name of a phase, for logging.
+     *
+     * @param phase The phase.
+     * @return The name of the phase.
+     */
+    public static String getPhaseName(int phase) {
+        return PhaseNames[phase];
+    }
+
+    /**
+     * Empties the histograms.
+     */
+    public void reset() {
+        for (int i = 0; i < PhaseCount; i++)
+            m_phases[i].clear();
+        m_total.clear();
+    }
+
+    /**
+     * Formats the histograms of the whole step and of every phase, one per line, for logging.
+     *
+     * @return The report.
+     */
+    public String report() {
+        StringBuilder out = new StringBuilder();
+        out.append("step: ").append(m_total);
+        for (int i = 0; i < PhaseCount; i++)
+            out.append('\n').append(PhaseNames[i]).append(": ").append(m_phases[i]);
+        return out.toString();
+    }
+}
@@ -0,0 +1,291 @@
+package Game;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.Arrays;
+
+/**
+ * A sweep-and-prune broadphase. The minimum and maximum x of every element's AABB are kept in
+ * a single array of endpoints sorted along the x axis. Because bodies only move a few pixels per
+ * step, the array is nearly sorted between steps and is re-sorted with an insertion sort, which
+ * runs in close to linear time. Sweeping the array then yields every overlapping pair directly.
+ */
+public class SweepAndPrune implements BroadPhase {
+	// Handles by slot, a handle's index is its slot
+	private Handle m_slots[] = new Handle[16];
+	private int m_slotCount;
+	private int m_freeSlots[] = new int[16];
+	private int m_freeCount;
+	private int m_releasedSlots[] = new int[16];
+	private int m_releasedCount;
+	
+	// Endpoints, each is (slot << 1) | isMax, sorted by m_values
+	private int m_endpoints[] = new int[32];
+	private float m_values[] = new float[32];
+	private int m_endpointCount;
+	private boolean m_dirty;
+	// Widest x extent of any element as of the last refresh, bounding how far left of a query overlapping elements can start
+	private double m_maxWidth;
+	
+	// Slots whose minimum has been passed but not their maximum, during a sweep
+	private int m_active[] = new int[16];
+	private int m_activeCount;
+	
+	/**
+	 * The proxy of an element, holding the bounds its endpoints were last loaded from.
+	 */
+	private static class Handle extends Proxy {
+		AABB bounds;
+		
+		Handle(SweepAndPrune owner, TreeElement e) {
+			super(owner, e);
+		}
+	}
+	
+	private void addEndpoint(int endpoint, float value) {
+		if(m_endpointCount == m_endpoints.length) {
+			m_endpoints = Arrays.copyOf(m_endpoints, m_endpointCount * 2);
+			m_values = Arrays.copyOf(m_values, m_endpointCount * 2);
+		}
+		
+		m_endpoints[m_endpointCount] = endpoint;
+		m_values[m_endpointCount] = value;
+		m_endpointCount++;
+	}
+	
+	/**
+	 * Drops endpoints of removed elements, reloads endpoint values from the stored bounds
+	 * and restores the order with an insertion sort. Does nothing if nothing has changed.
+	 */
+	private void refresh() {
+		if(!m_dirty)
+			return;
+		
+		int count = 0;
+		double maxWidth = 0;
+		for(int i = 0; i < m_endpointCount; i++) {
+			int endpoint = m_endpoints[i];
+			Handle e = m_slots[endpoint >> 1];
+			if(e == null)
+				continue;
+			
+			m_endpoints[count] = endpoint;
+			m_values[count] = (endpoint & 1) == 0 ? e.bounds.bl.x : e.bounds.tr.x;
+			maxWidth = Math.max(maxWidth, (double)e.bounds.tr.x - e.bounds.bl.x);
+			count++;
+		}
+		m_endpointCount = count;
+		m_maxWidth = maxWidth;
+		
+		// Slots of removed elements can only be reused once their endpoints are gone
+		for(int i = 0; i < m_releasedCount; i++) {
+			if(m_freeCount == m_freeSlots.length)
+				m_freeSlots = Arrays.copyOf(m_freeSlots, m_freeCount * 2);
+			m_freeSlots[m_freeCount++] = m_releasedSlots[i];
+		}
+		m_releasedCount = 0;
+		
+		for(int i = 1; i < m_endpointCount; i++) {
+			int endpoint = m_endpoints[i];
+			float value = m_values[i];
+			
+			int j = i - 1;
+			// Minimums sort before maximums of equal value, so touching boxes overlap
+			while(j >= 0 && (m_values[j] > value || 
+					(m_values[j] == value && (m_endpoints[j] & 1) > (endpoint & 1)))) {
+				m_endpoints[j + 1] = m_endpoints[j];
+				m_values[j + 1] = m_values[j];
+				j--;
+			}
+			m_endpoints[j + 1] = endpoint;
+			m_values[j + 1] = value;
+		}
+		
+		m_dirty = false;
+	}
+
+	/**
+	 * Inserts an element, adding its two endpoints.
+	 * 
+	 * @param e The element to insert.
+	 */
+	@Override
+	public void insert(TreeElement element) {
+		int slot;
+		if(m_freeCount > 0) {
+			slot = m_freeSlots[--m_freeCount];
+		} else {
+			if(m_slotCount == m_slots.length)
+				m_slots = Arrays.copyOf(m_slots, m_slotCount * 2);
+			slot = m_slotCount++;
+		}
+		
+		Handle e = new Handle(this, element);
+		e.index = slot;
+		e.bounds = element.getAABB().clone();
+		m_slots[slot] = e;
+		
+		addEndpoint(slot << 1, e.bounds.bl.x);
+		addEndpoint((slot << 1) | 1, e.bounds.tr.x);
+		m_dirty = true;
+	}
+
+	/**
+	 * Stores the element's current AABB. The endpoints are re-sorted lazily, on the next query or sweep.
+	 * 
+	 * @param e The element to update.
+	 */
+	@Override
+	public void update(TreeElement element) {
+		Handle e = (Handle)element.getProxy(this);
+		if(e == null) {
+			insert(element);
+			return;
+		}
+		
+		AABB bounds = element.getAABB();
+		if(bounds.equals(e.bounds))
+			return;
+		
+		e.bounds.set(bounds);
+		m_dirty = true;
+	}
+
+	/**
+	 * Removes an element. Its endpoints are dropped lazily, on the next query or sweep.
+	 * 
+	 * @param e The element to remove.
+	 */
+	@Override
+	public void remove(TreeElement element) {
+		Proxy e = element.getProxy(this);
+		if(e == null)
+			return;
+		
+		m_slots[e.index] = null;
+		if(m_releasedCount == m_releasedSlots.length)
+			m_releasedSlots = Arrays.copyOf(m_releasedSlots, m_releasedCount * 2);
+		m_releasedSlots[m_releasedCount++] = e.index;
+		
+		e.index = -1;
+		e.unlink();
+		m_dirty = true;
+	}
+
+	/**
+	 * Returns the index of the first endpoint whose value is at least value.
+	 */
+	private int lowerBound(double value) {
+		int low = 0, high = m_endpointCount;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(m_values[mid] < value)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		
+		return low;
+	}
+
+	/**
+	 * Reports every element overlapping bounds. No element is wider than the widest one, so elements
+	 * whose minimum lies further left of bounds than that cannot reach it. The scan binary searches
+	 * past them and stops at the right edge of bounds.
+	 * 
+	 * @param bounds The AABB to query.
+	 * @param callback The callback to report elements to.
+	 */
+	@Override
+	public void query(AABB bounds, QueryCallback callback) {
+		refresh();
+		
+		for(int i = lowerBound(bounds.bl.x - m_maxWidth); i < m_endpointCount && m_values[i] <= bounds.tr.x; i++) {
+			int endpoint = m_endpoints[i];
+			if((endpoint & 1) != 0)
+				continue;
+			
+			Handle e = m_slots[endpoint >> 1];
+			if(e.bounds.tr.x >= bounds.bl.x && e.element.getAABB().intersects(bounds))
+				callback.report(e.element);
+		}
+	}
+
+	/**
+	 * Sweeps the sorted endpoints, keeping the set of elements whose x interval is open.
+	 * Every element opened while another is open overlaps it on x, and is reported if
+	 * their AABBs also overlap on y.
+	 * 
+	 * @param callback The callback to report pairs to.
+	 */
+	@Override
+	public void pairs(PairCallback callback) {
+		refresh();
+		m_activeCount = 0;
+		
+		for(int i = 0; i < m_endpointCount; i++) {
+			int endpoint = m_endpoints[i];
+			int slot = endpoint >> 1;
+			
+			if((endpoint & 1) != 0) {
+				for(int j = 0; j < m_activeCount; j++) {
+					if(m_active[j] == slot) {
+						m_active[j] = m_active[--m_activeCount];
+						break;
+					}
+				}
+				continue;
+			}
+			
+			TreeElement b = m_slots[slot].element;
+			AABB bBounds = m_slots[slot].bounds;
+			for(int j = 0; j < m_activeCount; j++) {
+				TreeElement a = m_slots[m_active[j]].element;
+				AABB aBounds = m_slots[m_active[j]].bounds;
+				
+				if(aBounds.tr.y <= bBounds.bl.y && aBounds.bl.y >= bBounds.tr.y &&
+				   a.getAABB().intersects(b.getAABB()))
+					callback.pair(a, b);
+			}
+			
+			if(m_activeCount == m_active.length)
+				m_active = Arrays.copyOf(m_active, m_activeCount * 2);
+			m_active[m_activeCount++] = slot;
+		}
+	}
+
+	/**
+	 * Removes all elements.
+	 */
+	@Override
+	public void clear() {
+		for(int i = 0; i < m_slotCount; i++) {
+			if(m_slots[i] == null)
+				continue;
+			
+			m_slots[i].unlink();
+			m_slots[i] = null;
+		}
+		
+		m_slotCount = 0;
+		m_freeCount = 0;
+		m_releasedCount = 0;
+		m_endpointCount = 0;
+		m_maxWidth = 0;
+		m_dirty = false;
+	}
+
+	/**
+	 * Debug draws the stored AABB of every element.
+	 * 
+	 * @param gfx The graphics to draw on.
+	 */
+	@Override
+	public void draw(Graphics2D gfx) {
+		gfx.setColor(Color.BLUE);
+		for(int i = 0; i < m_slotCount; i++) {
+			if(m_slots[i] != null)
+				m_slots[i].bounds.draw(gfx);
+		}
+	}
+}
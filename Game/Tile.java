@@ -1,7 +1,7 @@
 package Game;
 
 /**
- * Represents a tile in the game world. A tile may have a rigid body, an associated entity, and different properties
+ * Represents a tile in the game world. A tile may have an associated entity, and different properties
  * such as collision, size, and position.
  */
 public class Tile {
@@ -11,12 +11,18 @@ public class Tile {
 	public boolean isMain = true;
 	public boolean isMulti = false;
 	
-	public RigidBody body;
 	public Entity entity;
 	
 	public int data1; // Could be width or main tile pos x
 	public int data2; // Could be height or main tile pos y
 	
+	// Cells covered by a collidable tile in its tilemap's collision grid
+	int cellX, cellY, cellW, cellH;
+	
+	// Screen rectangle of the tile, valid while the tilemap transform is at cachedVersion
+	int cachedVersion = -1;
+	int screenX0, screenY0, screenX1, screenY1;
+	
     /**
      * Returns the position of the tile when it is a multi-tile (non-main). The position is represented by a 2D vector.
      * 
@@ -0,0 +1,45 @@
+package Game;
+
+/**
+ * A grid of solid, axis aligned square tiles that a {@link PhysicsWorld} collides bodies against
+ * directly, without a body or broadphase entry per tile. The world looks up the cells under each
+ * awake body and resolves the body against the boxes of the tiles it finds there.
+ */
+public interface TileGrid {
+
+	/**
+	 * Returns the side length of a cell.
+	 *
+	 * @return The cell size in world units.
+	 */
+	float getTileSize();
+
+	/**
+	 * Writes the world position of the top-left corner of cell (0, 0) into out. Grids cannot be
+	 * rotated, cell (x, y) always covers the box from origin + (x, y) * size to origin + (x + 1, y + 1) * size.
+	 *
+	 * @param out The vector to write into.
+	 * @return out
+	 */
+	Vec2D getOrigin(Vec2D out);
+
+	/**
+	 * Finds the solid tile covering a cell. Tiles may cover several cells, in which case every one of
+	 * them reports the same tile.
+	 *
+	 * @param x The x coordinate of the cell.
+	 * @param y The y coordinate of the cell.
+	 * @param tile Receives the first cell of the tile in [0] and [1], and its size in cells in [2] and [3].
+	 * @return true if a solid tile covers the cell, false otherwise.
+	 */
+	boolean findTile(int x, int y, int tile[]);
+
+	/**
+	 * Returns the user data of the tile starting at a cell, reported with its contacts.
+	 *
+	 * @param x The x coordinate of the first cell of the tile.
+	 * @param y The y coordinate of the first cell of the tile.
+	 * @return The user data of the tile, or null if it has none.
+	 */
+	Object getUserData(int x, int y);
+}
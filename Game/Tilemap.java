@@ -4,9 +4,18 @@ import java.util.*;
 
 /**
  * A class representing a tilemap where tiles are stored and managed.
+ * Collidable tiles are also kept in a dense grid of cells, which the physics world collides
+ * bodies against directly, so tiles need no rigid bodies of their own.
  */
-public class Tilemap {
+public class Tilemap implements TileGrid {
     private Map<IVec2D, Tile> m_tiles;
+
+    // Collidable tiles by cell, covering m_solidW x m_solidH cells from (m_solidX, m_solidY), grown on insert
+    private Tile m_solid[] = new Tile[0];
+    private int m_solidX = 0, m_solidY = 0, m_solidW = 0, m_solidH = 0;
+    // Transform the collidable tiles were inserted with, placing the grid in the world
+    private TransformComponent m_transform;
+    private Vec2D m_zero = new Vec2D();
     
     /**
      * Constructs a new Tilemap object and initializes the tile storage.
@@ -77,17 +86,23 @@ public class Tilemap {
     }
 
     /**
-     * Inserts a new tile with the specified properties into the tilemap.
+     * Inserts a new tile with the specified properties into the tilemap. Collidable tiles are added to
+     * the collision grid, and the tilemap is registered with the physics world as a {@link TileGrid}.
      * 
-     * @param world The physics world to attach a rigid body to.
+     * @param world The physics world to collide the tile in.
      * @param worldTrans The world transform used to determine position.
      * @param pos The position at which to insert the tile.
      * @param dim The dimensions of the tile.
      * @param e The entity to associate with the tile.
      * @param isCollidable Whether the tile should be collidable.
      * @return `true` if the tile was successfully inserted, `false` if it could not be placed.
+     * @throws IllegalArgumentException If the tile is collidable and the world transform is rotated.
      */
     public boolean insert(PhysicsWorld world, TransformComponent worldTrans, IVec2D pos, IVec2D dim, Entity e, boolean isCollidable) {
+        // The physics world collides bodies against the tiles as axis aligned boxes
+        if(isCollidable && worldTrans.rot != 0)
+            throw new IllegalArgumentException("Cannot insert collidable tiles into a rotated tilemap");
+        
         if(!canPlace(pos, dim))
             return false;
         
@@ -112,7 +127,6 @@ public class Tilemap {
             tile.isMain = false;
             tile.isMulti = true;
             tile.entity = null;
-            tile.body = null;
             tile.data1 = pos.x;
             tile.data2 = pos.y;
             
@@ -128,13 +142,14 @@ public class Tilemap {
         }
         
         if(tile.isCollidable) {
-            RigidBody rb = world.create(worldTrans.getWorldPoint(getLocalTileCenter(pos, dim)), 0, true);
-            Vec2D hs = new Vec2D(Tile.sideLength * dim.x, Tile.sideLength * dim.y);
-            Rectangle rect = new Rectangle(50, hs.x, hs.y);
-            rb.attachFixture(rect);
-            rb.setUserData(e);
+            tile.cellX = pos.x;
+            tile.cellY = pos.y;
+            tile.cellW = dim.x;
+            tile.cellH = dim.y;
+            setSolid(tile, tile);
             
-            tile.body = rb;
+            m_transform = worldTrans;
+            world.addTileGrid(this);
         }
         
         m_tiles.put(pos, tile);
@@ -156,11 +171,12 @@ public class Tilemap {
         if(tile.isMulti && !tile.isMain)
             return erase(tile.getPos());
         
+        if(tile.isCollidable)
+            setSolid(tile, null);
+        
         IVec2D dim = tile.getSize();
         for(int i = pos.x; i < pos.x + dim.x; i++)
             for(int j = pos.y; j < pos.y + dim.y; j++) {
-                if(tile.body != null)
-                    tile.body.markForDeletion();
                 if(tile.entity != null)
                     tile.entity.world().destroy(tile.entity.id());
                 m_tiles.remove(pos);
@@ -169,6 +185,80 @@ public class Tilemap {
         return tile.entity;
     }
 
+    /**
+     * Writes solid into every cell covered by tile, growing the collision grid to fit them.
+     */
+    private void setSolid(Tile tile, Tile solid) {
+        int x0 = Math.min(m_solidX, tile.cellX), y0 = Math.min(m_solidY, tile.cellY);
+        int x1 = Math.max(m_solidX + m_solidW, tile.cellX + tile.cellW);
+        int y1 = Math.max(m_solidY + m_solidH, tile.cellY + tile.cellH);
+        if(m_solidW == 0) {
+            x0 = tile.cellX;
+            y0 = tile.cellY;
+            x1 = tile.cellX + tile.cellW;
+            y1 = tile.cellY + tile.cellH;
+        }
+        
+        if(x0 != m_solidX || y0 != m_solidY || x1 - x0 != m_solidW || y1 - y0 != m_solidH) {
+            Tile grown[] = new Tile[(x1 - x0) * (y1 - y0)];
+            for(int y = 0; y < m_solidH; y++)
+                System.arraycopy(m_solid, y * m_solidW, grown, (y + m_solidY - y0) * (x1 - x0) + m_solidX - x0, m_solidW);
+            
+            m_solid = grown;
+            m_solidX = x0;
+            m_solidY = y0;
+            m_solidW = x1 - x0;
+            m_solidH = y1 - y0;
+        }
+        
+        for(int y = tile.cellY; y < tile.cellY + tile.cellH; y++)
+            for(int x = tile.cellX; x < tile.cellX + tile.cellW; x++)
+                m_solid[(y - m_solidY) * m_solidW + x - m_solidX] = solid;
+    }
+    
+    private Tile solidAt(int x, int y) {
+        x -= m_solidX;
+        y -= m_solidY;
+        if(x < 0 || y < 0 || x >= m_solidW || y >= m_solidH)
+            return null;
+        
+        return m_solid[y * m_solidW + x];
+    }
+    
+    @Override
+    public float getTileSize() {
+        return Tile.sideLength;
+    }
+    
+    @Override
+    public Vec2D getOrigin(Vec2D out) {
+        if(m_transform.rot != 0)
+            throw new IllegalStateException("Cannot rotate a tilemap with collidable tiles");
+        
+        m_zero.x = 0;
+        m_zero.y = 0;
+        return m_transform.getWorldPoint(m_zero, out);
+    }
+    
+    @Override
+    public boolean findTile(int x, int y, int tile[]) {
+        Tile solid = solidAt(x, y);
+        if(solid == null)
+            return false;
+        
+        tile[0] = solid.cellX;
+        tile[1] = solid.cellY;
+        tile[2] = solid.cellW;
+        tile[3] = solid.cellH;
+        return true;
+    }
+    
+    @Override
+    public Object getUserData(int x, int y) {
+        Tile solid = solidAt(x, y);
+        return solid != null ? solid.entity : null;
+    }
+
     /**
      * Calculates the local center of a tile based on its position and dimensions.
      * 
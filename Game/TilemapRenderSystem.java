@@ -47,6 +47,8 @@ public class TilemapRenderSystem extends EntitySystem {
 				//System.out.println(e.id());
 				TransformComponent transform = e.get(TransformComponent.class);
 				TilemapComponent tilemapLayers = e.get(TilemapComponent.class);
+				// The map rarely moves, so each tile's corners are only transformed when it does
+				int version = transform.getVersion();
 				
 				for(int i = 0; i < tilemapLayers.getTilemapCount(); i++) {
 					Tilemap tilemap = tilemapLayers.getTilemap(i);
@@ -54,19 +56,24 @@ public class TilemapRenderSystem extends EntitySystem {
 					for(IVec2D pos : tilemap.getKeys()) {
 						Tile tile = tilemap.find(pos);
 
-						IVec2D size = tile.getSize();
-						Vec2D hs = new Vec2D(size.x * Tile.sideLength, size.y * Tile.sideLength).scale(0.5f);
-						Vec2D worldPos = transform.getWorldPoint(Tilemap.getLocalTileCenter(pos, tile.getSize()).sub(hs));
-						Vec2D worldDim = transform.getWorldPoint(Tilemap.getLocalTileCenter(pos, tile.getSize()).add(hs));
-						
-						int x[] = { (int)worldPos.x, (int)worldDim.x, (int)worldDim.x, (int)worldPos.x };
-						int y[] = { (int)worldPos.y, (int)worldPos.y, (int)worldDim.y, (int)worldDim.y };
+						if(tile.cachedVersion != version) {
+							IVec2D size = tile.getSize();
+							Vec2D hs = new Vec2D(size.x * Tile.sideLength, size.y * Tile.sideLength).scale(0.5f);
+							Vec2D worldPos = transform.getWorldPoint(Tilemap.getLocalTileCenter(pos, size).sub(hs));
+							Vec2D worldDim = transform.getWorldPoint(Tilemap.getLocalTileCenter(pos, size).add(hs));
+							
+							tile.screenX0 = (int)worldPos.x;
+							tile.screenY0 = (int)worldPos.y;
+							tile.screenX1 = (int)worldDim.x;
+							tile.screenY1 = (int)worldDim.y;
+							tile.cachedVersion = version;
+						}
 					
 						if(tile.entity != null && tile.entity.has(SpriteComponent.class)) {
 							Image image = tile.entity.get(SpriteComponent.class).image;
 							
 							gfx.setColor(Color.CYAN);
-							gfx.drawImage(image, x[0], y[0], x[2], y[2], 0, 0, 32, 32, null);
+							gfx.drawImage(image, tile.screenX0, tile.screenY0, tile.screenX1, tile.screenY1, 0, 0, 32, 32, null);
 						}
 					}
 				}	
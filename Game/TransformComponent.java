@@ -5,7 +5,7 @@ package Game;
  * Represents the position and rotation of an entity in 2D space.
  * Provides utility methods for converting between local and world coordinates.
  */
-public class TransformComponent extends Component {
+public class TransformComponent extends Component implements PackedComponent {
 
     // Position of the entity in 2D space
     public Vec2D pos = new Vec2D();
@@ -13,6 +13,46 @@ public class TransformComponent extends Component {
     // Rotation of the entity, in radians
     public float rot;
 
+    // Cached rotation matrix, valid for m_trigRot
+    private float m_trigRot = 0;
+    private float m_cos = 1;
+    private float m_sin = 0;
+
+    // Values seen by the last call to getVersion()
+    private float m_versionX = Float.NaN;
+    private float m_versionY = Float.NaN;
+    private float m_versionRot = Float.NaN;
+    private int m_version;
+
+    /**
+     * Recomputes the cached rotation matrix if the rotation changed since it was last computed.
+     */
+    private void updateTrig() {
+        if (rot != m_trigRot) {
+            m_trigRot = rot;
+            m_cos = (float) Math.cos(rot);
+            m_sin = (float) Math.sin(rot);
+        }
+    }
+
+    /**
+     * Returns a number that changes whenever the position or rotation has changed since the
+     * previous call. Caches derived from this transform can store the version they were built
+     * with and only recompute when it differs.
+     *
+     * @return The current version of this transform.
+     */
+    public int getVersion() {
+        if (pos.x != m_versionX || pos.y != m_versionY || rot != m_versionRot) {
+            m_versionX = pos.x;
+            m_versionY = pos.y;
+            m_versionRot = rot;
+            m_version++;
+        }
+
+        return m_version;
+    }
+
     /**
      * Converts a local point (relative to the entity's position and rotation)
      * to a world point by applying the entity's position and rotation.
@@ -21,7 +61,23 @@ public class TransformComponent extends Component {
      * @return The corresponding world point.
      */
     Vec2D getWorldPoint(Vec2D localPoint) {
-        return localPoint.clone().rotate(rot).add(pos);
+        return getWorldPoint(localPoint, new Vec2D());
+    }
+
+    /**
+     * Converts a local point to a world point, writing the result into out.
+     * localPoint and out may be the same vector.
+     *
+     * @param localPoint The local point relative to the entity.
+     * @param out The vector to write the world point into.
+     * @return out, so that calls may be chained together.
+     */
+    Vec2D getWorldPoint(Vec2D localPoint, Vec2D out) {
+        updateTrig();
+        float x = localPoint.x, y = localPoint.y;
+        out.x = x * m_cos - y * m_sin + pos.x;
+        out.y = x * m_sin + y * m_cos + pos.y;
+        return out;
     }
 
     /**
@@ -32,7 +88,23 @@ public class TransformComponent extends Component {
      * @return The corresponding local point relative to the entity.
      */
     Vec2D getLocalPoint(Vec2D worldPoint) {
-        return worldPoint.clone().sub(pos).rotate(-rot);
+        return getLocalPoint(worldPoint, new Vec2D());
+    }
+
+    /**
+     * Converts a world point to a local point, writing the result into out.
+     * worldPoint and out may be the same vector.
+     *
+     * @param worldPoint The point in world coordinates.
+     * @param out The vector to write the local point into.
+     * @return out, so that calls may be chained together.
+     */
+    Vec2D getLocalPoint(Vec2D worldPoint, Vec2D out) {
+        updateTrig();
+        float x = worldPoint.x - pos.x, y = worldPoint.y - pos.y;
+        out.x = x * m_cos + y * m_sin;
+        out.y = -x * m_sin + y * m_cos;
+        return out;
     }
 
     /**
@@ -57,4 +129,40 @@ public class TransformComponent extends Component {
         clone.rot = rot;
         return clone;
     }
+
+    /**
+     * Returns the number of floats written by saveState.
+     *
+     * @return The size of the packed state.
+     */
+    @Override
+    public int stateSize() {
+        return 3;
+    }
+
+    /**
+     * Writes the position and rotation into buf.
+     *
+     * @param buf The buffer to write into.
+     * @param offset The index to start writing at.
+     */
+    @Override
+    public void saveState(float buf[], int offset) {
+        buf[offset] = pos.x;
+        buf[offset + 1] = pos.y;
+        buf[offset + 2] = rot;
+    }
+
+    /**
+     * Reads the position and rotation from buf. The position is written in place.
+     *
+     * @param buf The buffer to read from.
+     * @param offset The index to start reading at.
+     */
+    @Override
+    public void loadState(float buf[], int offset) {
+        pos.x = buf[offset];
+        pos.y = buf[offset + 1];
+        rot = buf[offset + 2];
+    }
 }
\ No newline at end of file
@@ -11,6 +11,9 @@ public abstract class TreeElement {
     // Flag to track whether the element has been queried
     private boolean queried = false;
 
+    // Proxies of the broadphases the element is stored in, null when it is not in any
+    Proxy proxies;
+
     /**
      * Sets the queried status of the element.
      *
@@ -29,6 +32,47 @@ public abstract class TreeElement {
         return queried;
     }
 
+    /**
+     * Checks whether the element is currently stored in a tree.
+     *
+     * @return true if the element is in a tree, false otherwise.
+     */
+    public boolean isInTree() {
+        return proxies != null;
+    }
+
+    /**
+     * Returns the proxy a broadphase keeps on this element.
+     *
+     * @param owner The broadphase.
+     * @return The proxy, or null if the element is not in the broadphase.
+     */
+    Proxy getProxy(BroadPhase owner) {
+        for (Proxy p = proxies; p != null; p = p.next) {
+            if (p.owner == owner)
+                return p;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the layers this element belongs to, as a bit mask. Elements belong to the first layer by default.
+     *
+     * @return The self mask of the element.
+     */
+    public int getSelfMask() {
+        return 1;
+    }
+
+    /**
+     * Returns the layers this element can collide with, as a bit mask. Elements collide with every layer by default.
+     *
+     * @return The collision mask of the element.
+     */
+    public int getCollMask() {
+        return ~0;
+    }
+
     /**
      * Abstract method that must be implemented by subclasses to return the 
      * axis-aligned bounding box (AABB) of the tree element.
@@ -0,0 +1,411 @@
+package Game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Saves and loads the state of an EntityWorld, its PhysicsWorld and a tilemap to a versioned binary file.
+ *
+ * Every {@link PackedComponent} type is written as a column: the IDs of the entities that own it followed
+ * by their packed state. Rigid bodies and tilemap layers are written the same way, as primitive arrays.
+ * Files are written and read through a MappedByteBuffer and every array is copied in bulk.
+ *
+ * Loading applies the saved state onto the entities and bodies that are still alive and share the saved
+ * IDs; it does not recreate entities, since sprites, items and the UI cannot be saved. Tilemap layers are
+ * rebuilt from the saved tiles: tiles placed after the save are erased and tiles erased after the save are
+ * inserted again, with their saved size and collision. A reinserted tile gets back its entity if that entity
+ * is still alive, and has none otherwise, so it collides but is not drawn.
+ *
+ * Saving is split into {@link #capture()}, which must run on the tick thread, and {@link #write(Path)},
+ * which only reads the captured buffers and may run on another thread, as long as capture() is not called
+ * again until it has finished.
+ */
+public class WorldSave {
+	public static final int Magic = 0x524D5047; // "RMPG"
+	public static final int Version = 2;
+
+	private static final int TileStride = 6; // x, y, width, height, collidable, entity ID or 0
+	private static final int TileStrideV1 = 5; // Version 1 did not save tile entities
+
+	private EntityWorld m_world;
+	private PhysicsWorld m_physicsWorld;
+	private TilemapComponent m_tilemaps;
+	private TransformComponent m_tilemapTransform;
+
+	// Captured body state
+	private PhysicsWorld.Snapshot m_bodies = new PhysicsWorld.Snapshot();
+	private int m_bodyIds[] = new int[0];
+	private int m_bodyFlags[] = new int[0];
+
+	// Captured component columns
+	private ArrayList<Column> m_columns = new ArrayList<Column>();
+	private int m_columnCount;
+
+	// Captured tilemap layers
+	private int m_tiles[][] = new int[0][];
+	private int m_tileCounts[] = new int[0];
+
+	private static class Column {
+		String name;
+		byte encodedName[];
+		int stride;
+		int rows;
+		int ids[] = new int[0];
+		float data[] = new float[0];
+
+		void reserve(int count) {
+			if(ids.length >= count)
+				return;
+
+			int size = Math.max(count, ids.length * 2);
+			ids = Arrays.copyOf(ids, size);
+			data = Arrays.copyOf(data, size * stride);
+		}
+
+		int byteSize() {
+			return 2 + encodedName.length + 4 + 4 + rows * 4 + rows * stride * 4;
+		}
+	}
+
+	/**
+	 * Creates a WorldSave for the given worlds.
+	 *
+	 * @param world The entity world to save components from.
+	 * @param physicsWorld The physics world to save bodies from.
+	 * @param tilemap The entity holding the TilemapComponent and TransformComponent of the tilemap to save,
+	 * or null to skip tiles.
+	 */
+	public WorldSave(EntityWorld world, PhysicsWorld physicsWorld, Entity tilemap) {
+		m_world = world;
+		m_physicsWorld = physicsWorld;
+		if(tilemap != null) {
+			m_tilemaps = tilemap.get(TilemapComponent.class);
+			m_tilemapTransform = tilemap.get(TransformComponent.class);
+		}
+	}
+
+	/**
+	 * Captures and writes the current state to a file.
+	 *
+	 * @param path The file to write.
+	 * @throws IOException If the file could not be written.
+	 */
+	public void save(Path path) throws IOException {
+		capture();
+		write(path);
+	}
+
+	/**
+	 * Copies the current state of the worlds into this WorldSave's reusable buffers.
+	 */
+	public void capture() {
+		// Bodies
+		m_physicsWorld.snapshot(m_bodies);
+		int bodyCount = m_bodies.size();
+		if(m_bodyIds.length < bodyCount) {
+			m_bodyIds = new int[Math.max(bodyCount, m_bodyIds.length * 2)];
+			m_bodyFlags = new int[m_bodyIds.length];
+		}
+		for(int i = 0; i < bodyCount; i++) {
+			RigidBody body = m_bodies.bodies[i];
+			m_bodyIds[i] = body.id();
+			m_bodyFlags[i] = (body.isStatic() ? 1 : 0) | (m_bodies.marked[i] ? 2 : 0);
+		}
+
+		// Component columns
+		m_columnCount = 0;
+		for(Class<?> type : m_world.getComponentTypes()) {
+			if(!PackedComponent.class.isAssignableFrom(type))
+				continue;
+
+			captureColumn(type);
+		}
+
+		// Tilemap layers
+		if(m_tilemaps == null)
+			return;
+
+		int layers = m_tilemaps.getTilemapCount();
+		if(m_tiles.length != layers) {
+			m_tiles = new int[layers][0];
+			m_tileCounts = new int[layers];
+		}
+		for(int layer = 0; layer < layers; layer++) {
+			Tilemap tilemap = m_tilemaps.getTilemap(layer);
+			if(m_tiles[layer].length < tilemap.getKeys().size() * TileStride)
+				m_tiles[layer] = new int[tilemap.getKeys().size() * TileStride];
+
+			int count = 0;
+			for(IVec2D pos : tilemap.getKeys()) {
+				Tile tile = tilemap.find(pos);
+				if(!tile.isMain)
+					continue;
+
+				int offset = count * TileStride;
+				m_tiles[layer][offset] = pos.x;
+				m_tiles[layer][offset + 1] = pos.y;
+				m_tiles[layer][offset + 2] = tile.data1;
+				m_tiles[layer][offset + 3] = tile.data2;
+				m_tiles[layer][offset + 4] = tile.isCollidable ? 1 : 0;
+				m_tiles[layer][offset + 5] = tile.entity != null ? tile.entity.id() : 0;
+				count++;
+			}
+			m_tileCounts[layer] = count;
+		}
+	}
+
+	private void captureColumn(Class<?> type) {
+		if(m_columns.size() <= m_columnCount)
+			m_columns.add(new Column());
+		Column column = m_columns.get(m_columnCount);
+		if(!type.getName().equals(column.name)) {
+			column.name = type.getName();
+			column.encodedName = column.name.getBytes(StandardCharsets.UTF_8);
+			column.ids = new int[0];
+			column.data = new float[0];
+			column.stride = 0;
+		}
+
+		// Creating the query's own set first keeps the superset list from being replaced while it is walked
+		ComponentSet query = new ComponentSet().add(m_world.component(type));
+		m_world.getEntities(query);
+
+		// Every entity is in exactly one set, so the sets are walked directly without collecting the IDs
+		column.rows = 0;
+		for(ComponentSet superSet : m_world.getSuperSets(query)) {
+			for(Integer id : m_world.getEntities(superSet)) {
+				PackedComponent comp = (PackedComponent)m_world.getEntityData(id).get(type);
+				if(column.stride == 0)
+					column.stride = comp.stateSize();
+
+				column.reserve(column.rows + 1);
+				column.ids[column.rows] = id;
+				comp.saveState(column.data, column.rows * column.stride);
+				column.rows++;
+			}
+		}
+
+		// Types no entity has are left out, and the column is reused by the next type
+		if(column.rows > 0)
+			m_columnCount++;
+	}
+
+	/**
+	 * Writes the most recently captured state to a file.
+	 *
+	 * @param path The file to write.
+	 * @throws IOException If the file could not be written.
+	 */
+	public void write(Path path) throws IOException {
+		int bodyCount = m_bodies.size();
+		long size = 4 + 4;
+		size += 4 + 4 + bodyCount * (4 + 4 + 4 * 2 + 4 * RigidBody.StateStride);
+		size += 4;
+		for(int i = 0; i < m_columnCount; i++)
+			size += m_columns.get(i).byteSize();
+		size += 4;
+		for(int layer = 0; layer < m_tiles.length; layer++)
+			size += 4 + m_tileCounts[layer] * TileStride * 4;
+
+		try(FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+			buf.putInt(Magic);
+			buf.putInt(Version);
+
+			buf.putInt(bodyCount);
+			buf.putInt(m_bodies.slotCount);
+			putInts(buf, m_bodyIds, bodyCount);
+			putInts(buf, m_bodyFlags, bodyCount);
+			putInts(buf, m_bodies.masks, bodyCount * 2);
+			putFloats(buf, m_bodies.state, bodyCount * RigidBody.StateStride);
+
+			buf.putInt(m_columnCount);
+			for(int i = 0; i < m_columnCount; i++) {
+				Column column = m_columns.get(i);
+				buf.putShort((short)column.encodedName.length);
+				buf.put(column.encodedName);
+				buf.putInt(column.stride);
+				buf.putInt(column.rows);
+				putInts(buf, column.ids, column.rows);
+				putFloats(buf, column.data, column.rows * column.stride);
+			}
+
+			buf.putInt(m_tiles.length);
+			for(int layer = 0; layer < m_tiles.length; layer++) {
+				buf.putInt(m_tileCounts[layer]);
+				putInts(buf, m_tiles[layer], m_tileCounts[layer] * TileStride);
+			}
+		}
+	}
+
+	/**
+	 * Loads a file written by {@link #save(Path)}, applying it onto the live entities, bodies and tiles.
+	 *
+	 * @param path The file to read.
+	 * @throws IOException If the file could not be read, or is not a save file of a supported version.
+	 */
+	public void load(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if(buf.getInt() != Magic)
+				throw new IOException("Not a save file: " + path);
+			int version = buf.getInt();
+			if(version < 1 || version > Version)
+				throw new IOException("Unsupported save version: " + version);
+
+			loadBodies(buf);
+			loadColumns(buf);
+			loadTiles(buf, version == 1 ? TileStrideV1 : TileStride);
+		}
+	}
+
+	private void loadBodies(ByteBuffer buf) {
+		int bodyCount = buf.getInt();
+		buf.getInt(); // ID slot count, bodies are matched by ID rather than recreated
+
+		int ids[] = getInts(buf, bodyCount);
+		int flags[] = getInts(buf, bodyCount);
+		int masks[] = getInts(buf, bodyCount * 2);
+		float state[] = getFloats(buf, bodyCount * RigidBody.StateStride);
+
+		for(int i = 0; i < bodyCount; i++) {
+			RigidBody body = m_physicsWorld.get(ids[i]);
+			if(body == null)
+				continue;
+
+			body.loadState(state, i * RigidBody.StateStride);
+			body.setSelfMask(masks[i * 2]);
+			body.setCollMask(masks[i * 2 + 1]);
+			body.setMarkedForDeletion((flags[i] & 2) != 0);
+		}
+	}
+
+	private void loadColumns(ByteBuffer buf) {
+		Set<Class<?>> types = m_world.getComponentTypes();
+
+		int columnCount = buf.getInt();
+		for(int i = 0; i < columnCount; i++) {
+			byte encodedName[] = new byte[buf.getShort()];
+			buf.get(encodedName);
+			String name = new String(encodedName, StandardCharsets.UTF_8);
+			int stride = buf.getInt();
+			int rows = buf.getInt();
+
+			Class<?> type = null;
+			for(Class<?> candidate : types) {
+				if(candidate.getName().equals(name))
+					type = candidate;
+			}
+
+			if(type == null) {
+				buf.position(buf.position() + rows * 4 + rows * stride * 4);
+				continue;
+			}
+
+			int ids[] = getInts(buf, rows);
+			float data[] = getFloats(buf, rows * stride);
+			for(int row = 0; row < rows; row++) {
+				if(!m_world.isAlive(ids[row]))
+					continue;
+
+				Object comp = m_world.getEntityData(ids[row]).get(type);
+				if(comp instanceof PackedComponent && ((PackedComponent)comp).stateSize() == stride)
+					((PackedComponent)comp).loadState(data, row * stride);
+			}
+		}
+	}
+
+	private void loadTiles(ByteBuffer buf, int stride) {
+		int layers = buf.getInt();
+		for(int layer = 0; layer < layers; layer++) {
+			int count = buf.getInt();
+			int tiles[] = getInts(buf, count * stride);
+
+			if(m_tilemaps == null || layer >= m_tilemaps.getTilemapCount())
+				continue;
+
+			HashMap<IVec2D, Integer> saved = new HashMap<IVec2D, Integer>();
+			for(int i = 0; i < count; i++)
+				saved.put(new IVec2D(tiles[i * stride], tiles[i * stride + 1]), i * stride);
+
+			// Erase every tile that is not in the save as it is now, which destroys its entity
+			Tilemap tilemap = m_tilemaps.getTilemap(layer);
+			ArrayList<IVec2D> changed = new ArrayList<IVec2D>();
+			for(IVec2D pos : tilemap.getKeys()) {
+				Tile tile = tilemap.find(pos);
+				if(!tile.isMain)
+					continue;
+
+				Integer offset = saved.get(pos);
+				if(offset == null || !sameTile(tile, tiles, offset, stride))
+					changed.add(pos);
+				else
+					saved.remove(pos);
+			}
+			for(IVec2D pos : changed)
+				tilemap.erase(pos);
+
+			// Insert the saved tiles that are missing
+			for(Map.Entry<IVec2D, Integer> entry : saved.entrySet()) {
+				int offset = entry.getValue();
+				int entityId = stride > 5 ? tiles[offset + 5] : 0;
+				Entity entity = entityId != 0 && m_world.isAlive(entityId) ? new Entity(entityId, m_world) : null;
+
+				tilemap.insert(m_physicsWorld, m_tilemapTransform, entry.getKey(),
+						new IVec2D(tiles[offset + 2], tiles[offset + 3]), entity, tiles[offset + 4] != 0);
+			}
+		}
+	}
+
+	private static boolean sameTile(Tile tile, int tiles[], int offset, int stride) {
+		if(tile.data1 != tiles[offset + 2] || tile.data2 != tiles[offset + 3])
+			return false;
+		if(tile.isCollidable != (tiles[offset + 4] != 0))
+			return false;
+
+		// Version 1 saves have no entity IDs, so any entity matches
+		if(stride <= 5)
+			return true;
+
+		int entityId = tile.entity != null ? tile.entity.id() : 0;
+		return entityId == tiles[offset + 5];
+	}
+
+	private static void putInts(ByteBuffer buf, int src[], int count) {
+		buf.asIntBuffer().put(src, 0, count);
+		buf.position(buf.position() + count * 4);
+	}
+
+	private static void putFloats(ByteBuffer buf, float src[], int count) {
+		buf.asFloatBuffer().put(src, 0, count);
+		buf.position(buf.position() + count * 4);
+	}
+
+	private static int[] getInts(ByteBuffer buf, int count) {
+		int dst[] = new int[count];
+		buf.asIntBuffer().get(dst);
+		buf.position(buf.position() + count * 4);
+		return dst;
+	}
+
+	private static float[] getFloats(ByteBuffer buf, int count) {
+		float dst[] = new float[count];
+		buf.asFloatBuffer().get(dst);
+		buf.position(buf.position() + count * 4);
+		return dst;
+	}
+}